@@ -0,0 +1,90 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import com.github.malthelegend104.logger.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the capture grows. Every iteration starts a new capture and logs {@code lines} lines into it, reporting the
+ * time taken and, as {@code retainedBytes}, how much more heap is in use afterwards.
+ * <ul>
+ *     <li>{@code unbounded} keeps everything on the heap (the default).</li>
+ *     <li>{@code limited} keeps the newest 1 MB per stream.</li>
+ *     <li>{@code spill} keeps 1 MB on the heap and moves the rest into memory-mapped files.</li>
+ * </ul>
+ * Run with {@code -prof gc} to also see the allocation rate.
+ * See {@link CaptureMemoryContendedBenchmark} for several threads logging into the same capture.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class CaptureMemoryBenchmark {
+    private static final int ONE_MB = 1024 * 1024;
+
+    @Param({"unbounded", "limited", "spill"})
+    public String buffer;
+
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private Console console;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        console = new Console(true, 0);
+        switch (buffer) {
+            case "limited" -> console.logger().setCaptureLimit(ONE_MB);
+            case "spill" -> console.logger().setCaptureSpill(
+                    Files.createDirectory(console.directory().resolve("spill")).toString(), ONE_MB, 16 * ONE_MB);
+            default -> { }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        console.close();
+    }
+
+    @Benchmark
+    public void capture(Heap heap) {
+        for (int i = 0; i < lines; i++) {
+            Logger.log("Processed request {} in {} ms", i, 17);
+        }
+    }
+
+    /**
+     * Heap in use after a full GC, compared to before the iteration. Every thread measures the whole heap, so the
+     * result is split between them to keep the reported total right.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private long before;
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void before() {
+            before = used();
+        }
+
+        @TearDown(Level.Iteration)
+        public void after(BenchmarkParams params) {
+            retainedBytes = (used() - before) / params.getThreads();
+        }
+
+        private long used() {
+            memory.gc();
+            return memory.getHeapMemoryUsage().getUsed();
+        }
+    }
+}
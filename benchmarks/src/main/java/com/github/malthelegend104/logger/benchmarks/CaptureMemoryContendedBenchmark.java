@@ -0,0 +1,10 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * {@link CaptureMemoryBenchmark} with four threads logging {@code lines} lines each into the same capture.
+ */
+@Threads(4)
+public class CaptureMemoryContendedBenchmark extends CaptureMemoryBenchmark {
+}
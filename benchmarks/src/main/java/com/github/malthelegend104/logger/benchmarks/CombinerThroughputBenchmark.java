@@ -0,0 +1,47 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw bytes written to {@link System#out}. With {@code capture} on, this is the stream the logger puts in place, which
+ * copies every write to both the original stream and the capture buffer. With it off, it's the baseline.
+ * See {@link CombinerThroughputContendedBenchmark} for several writers at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CombinerThroughputBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int writeSize;
+
+    @Param({"false", "true"})
+    public boolean capture;
+
+    private Console console;
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = new Console(capture, 64 * 1024 * 1024);
+        payload = new byte[writeSize];
+        Arrays.fill(payload, (byte) 'x');
+        payload[writeSize - 1] = '\n';
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        console.close();
+    }
+
+    @Benchmark
+    public void write() {
+        System.out.write(payload, 0, payload.length);
+    }
+}
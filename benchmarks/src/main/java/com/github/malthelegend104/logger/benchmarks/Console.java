@@ -0,0 +1,67 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import com.github.malthelegend104.logger.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Points {@link System#out} and {@link System#err} at a stream that throws everything away, so the benchmarks measure
+ * the logger instead of the terminal. When capturing, a {@link Logger} is put on top of that, the same way an
+ * application would use it.
+ */
+final class Console {
+    private final PrintStream out = System.out;
+    private final PrintStream err = System.err;
+    private final Path directory;
+    private final Logger logger;
+
+    /**
+     * @param capture {@code boolean} whether a {@link Logger} should capture the output.
+     * @param captureLimit {@code int} bytes kept per stream, 0 to keep everything.
+     */
+    Console(boolean capture, int captureLimit) throws IOException {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(discard);
+        System.setErr(discard);
+        if (capture) {
+            directory = Files.createTempDirectory("logger-bench");
+            logger = new Logger(directory + "/");
+            if (captureLimit > 0) logger.setCaptureLimit(captureLimit);
+        } else {
+            directory = null;
+            logger = null;
+        }
+    }
+
+    Logger logger() {
+        return logger;
+    }
+
+    /**
+     * Directory the capturing {@link Logger} writes its dumps to, null when not capturing.
+     */
+    Path directory() {
+        return directory;
+    }
+
+    void close() throws IOException {
+        if (logger != null) logger.stopCapture();
+        System.setOut(out);
+        System.setErr(err);
+        delete(directory);
+    }
+
+    // Deletes a directory and everything in it.
+    static void delete(Path directory) throws IOException {
+        if (directory == null) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import com.github.malthelegend104.logger.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single call to each level method, for the String, Object and primitive overloads.
+ * With {@code capture} on, every line also goes through the capture buffer (limited to 64 MB so long runs don't run
+ * out of memory). See {@link LevelMethodsContendedBenchmark} for the same calls from several threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LevelMethodsBenchmark {
+    private static final String MESSAGE = "Connection pool resized to 32 connections";
+    private static final Object OBJECT = List.of("alpha", "beta", "gamma");
+
+    @Param({"log", "info", "warn", "err"})
+    public String level;
+
+    @Param({"false", "true"})
+    public boolean capture;
+
+    private Console console;
+    private int selected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = new Console(capture, 64 * 1024 * 1024);
+        selected = List.of("log", "info", "warn", "err").indexOf(level);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        console.close();
+    }
+
+    @Benchmark
+    public void string() {
+        switch (selected) {
+            case 0 -> Logger.log(MESSAGE);
+            case 1 -> Logger.info(MESSAGE);
+            case 2 -> Logger.warn(MESSAGE);
+            default -> Logger.err(MESSAGE);
+        }
+    }
+
+    @Benchmark
+    public void object() {
+        switch (selected) {
+            case 0 -> Logger.log(OBJECT);
+            case 1 -> Logger.info(OBJECT);
+            case 2 -> Logger.warn(OBJECT);
+            default -> Logger.err(OBJECT);
+        }
+    }
+
+    @Benchmark
+    public void integer(Values values) {
+        int value = values.next();
+        switch (selected) {
+            case 0 -> Logger.log(value);
+            case 1 -> Logger.info(value);
+            case 2 -> Logger.warn(value);
+            default -> Logger.err(value);
+        }
+    }
+
+    @Benchmark
+    public void longInteger(Values values) {
+        long value = values.next() * 1_000_003L;
+        switch (selected) {
+            case 0 -> Logger.log(value);
+            case 1 -> Logger.info(value);
+            case 2 -> Logger.warn(value);
+            default -> Logger.err(value);
+        }
+    }
+
+    @Benchmark
+    public void decimal(Values values) {
+        double value = values.next() * 0.25;
+        switch (selected) {
+            case 0 -> Logger.log(value);
+            case 1 -> Logger.info(value);
+            case 2 -> Logger.warn(value);
+            default -> Logger.err(value);
+        }
+    }
+
+    @Benchmark
+    public void floatDecimal(Values values) {
+        float value = values.next() * 0.25f;
+        switch (selected) {
+            case 0 -> Logger.log(value);
+            case 1 -> Logger.info(value);
+            case 2 -> Logger.warn(value);
+            default -> Logger.err(value);
+        }
+    }
+
+    @Benchmark
+    public void character(Values values) {
+        char value = (char) ('a' + (values.next() & 15));
+        switch (selected) {
+            case 0 -> Logger.log(value);
+            case 1 -> Logger.info(value);
+            case 2 -> Logger.warn(value);
+            default -> Logger.err(value);
+        }
+    }
+
+    @Benchmark
+    public void bool(Values values) {
+        boolean value = (values.next() & 1) == 0;
+        switch (selected) {
+            case 0 -> Logger.log(value);
+            case 1 -> Logger.info(value);
+            case 2 -> Logger.warn(value);
+            default -> Logger.err(value);
+        }
+    }
+
+    /**
+     * Changing numbers per thread, so the primitive overloads can't be folded into a constant.
+     */
+    @State(Scope.Thread)
+    public static class Values {
+        private int counter;
+
+        int next() {
+            return counter++;
+        }
+    }
+}
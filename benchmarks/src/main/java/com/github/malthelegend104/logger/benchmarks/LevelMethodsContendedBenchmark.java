@@ -0,0 +1,10 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * {@link LevelMethodsBenchmark} with four threads logging at the same time.
+ */
+@Threads(4)
+public class LevelMethodsContendedBenchmark extends LevelMethodsBenchmark {
+}
@@ -0,0 +1,101 @@
+package com.github.malthelegend104.logger.benchmarks;
+
+import com.github.malthelegend104.logger.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link Logger#logConsole()} against how much has been captured.
+ * The capture is limited to {@code captureBytes} per stream and filled up before measuring, so it stays the same size
+ * while other threads keep logging.
+ * <ul>
+ *     <li>{@code logConsole} writes the dump with nothing else going on.</li>
+ *     <li>The {@code underLoad} group writes the dump from one thread while three others keep logging.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class LogConsoleBenchmark {
+    @Param({"1048576", "16777216", "134217728"})
+    public int captureBytes;
+
+    private Console console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        console = new Console(true, captureBytes);
+        // Lines are a bit over 60 bytes, so this fills the capture about twice.
+        for (int i = 0, lines = captureBytes / 30; i < lines; i++) {
+            Logger.log("Processed request {} in {} ms", i, 17);
+            if ((i & 7) == 0) Logger.err("Request {} timed out", i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        console.close();
+    }
+
+    @Benchmark
+    public void logConsole(Dumps dumps) {
+        console.logger().setDumpPath(dumps.directory + "/");
+        console.logger().logConsole();
+    }
+
+    @Benchmark
+    @Group("underLoad")
+    @GroupThreads(1)
+    public void dump(Dumps dumps) {
+        logConsole(dumps);
+    }
+
+    @Benchmark
+    @Group("underLoad")
+    @GroupThreads(3)
+    public void produce(Counter counter) {
+        Logger.log("Processed request {} in {} ms", counter.next(), 17);
+    }
+
+    /**
+     * Where the dumps go. Dump files are named after the current second, so each one is deleted right after it's
+     * written to let the next one be created.
+     */
+    @State(Scope.Thread)
+    public static class Dumps {
+        private Path directory;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("logger-bench-dumps");
+        }
+
+        @TearDown(Level.Invocation)
+        public void clear() throws IOException {
+            try (var files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Console.delete(directory);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Counter {
+        private int counter;
+
+        int next() {
+            return counter++;
+        }
+    }
+}
@@ -41,6 +41,18 @@ public class Examples {
         exampleLogger.dumpConsole();
 
 
+        /*
+         * Lazy messages
+         */
+        // The message is only built when the line is actually written.
+        Logger.info("Loaded {} items in {} ms", 100, 42);
+        Logger.warnLazy(() -> "This is only built if warnings are on.");
+        // Anything below the set level is skipped, without building the message.
+        Logger.setLevel(Logger.LEVEL_WARN);
+        Logger.log("This won't be shown: {}", exampleLogger);
+        Logger.setLevel(Logger.LEVEL_LOG);
+
+
         /*
          * Log only one PrintStream
          */
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Pattern;
+
+/**
+ * Searches files written by {@link Logger#logConsole()} and {@link Logger#dumpConsole()} from the command line.
+ * <pre>
+ * java -cp logger.jar com.github.malthelegend104.logger.LogQuery [options] &lt;file or directory&gt;...
+ *   -l, --level &lt;log|info|warn|err&gt;   only lines with at least this level
+ *   -f, --from &lt;time&gt;                 only lines captured at or after this time
+ *   -t, --to &lt;time&gt;                   only lines captured at or before this time
+ *   -e, --regex &lt;pattern&gt;             only lines containing a match for the pattern
+ * </pre>
+ * Times are either {@code 2022-10-18T14:02:00Z}, {@code 2022-10-18T14:02} in the local time zone, or {@code 14:02}
+ * on the day the dump starts. Directories are searched for indexed dumps.
+ * <p>
+ * Levels and times are only known for dumps written with {@link Logger#enableIndexedDumps()}, plain dumps can only be
+ * searched with {@code --regex}. Files are memory-mapped, split into chunks on line boundaries and scanned in
+ * parallel, a few chunks per thread at a time, and matching lines are printed in the order they are in the file
+ * as soon as every chunk before them is done.
+ */
+public class LogQuery {
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+
+    private byte minLevel = Logger.LEVEL_LOG;
+    private String from;
+    private String to;
+    private Pattern pattern;
+    private final List<Path> files = new ArrayList<>();
+
+    public static void main(String[] args) {
+        LogQuery query = new LogQuery();
+        if (!query.parse(args)) {
+            usage();
+            System.exit(2);
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 64 * 1024));
+        boolean failed = false;
+        for (Path file : query.files) {
+            try {
+                query.search(file, (query.files.size() > 1) ? file + ":" : "", out);
+            } catch (IOException | DateTimeException e) {
+                out.flush();
+                System.err.println(file + ": " + e.getMessage());
+                failed = true;
+            }
+        }
+        out.flush();
+        if (failed) System.exit(1);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LogQuery [options] <file or directory>...");
+        System.err.println("  -l, --level <log|info|warn|err>   only lines with at least this level");
+        System.err.println("  -f, --from <time>                 only lines captured at or after this time");
+        System.err.println("  -t, --to <time>                   only lines captured at or before this time");
+        System.err.println("  -e, --regex <pattern>             only lines containing a match for the pattern");
+        System.err.println("Times: 2022-10-18T14:02:00Z, 2022-10-18T14:02 (local), or 14:02 (on the day the dump starts).");
+    }
+
+    private boolean parse(String[] args) {
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-l", "--level" -> minLevel = level(args[++i]);
+                    case "-f", "--from" -> from = args[++i];
+                    case "-t", "--to" -> to = args[++i];
+                    case "-e", "--regex" -> pattern = Pattern.compile(args[++i]);
+                    case "-h", "--help" -> {
+                        return false;
+                    }
+                    default -> {
+                        Path path = Path.of(args[i]);
+                        if (Files.isDirectory(path)) files.addAll(Logger.DumpReader.segments(path));
+                        else files.add(path);
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.err.println("Missing value for " + args[args.length - 1]);
+            return false;
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+        return !files.isEmpty();
+    }
+
+    private static byte level(String name) {
+        return switch (name.toLowerCase()) {
+            case "log" -> Logger.LEVEL_LOG;
+            case "info" -> Logger.LEVEL_INFO;
+            case "warn" -> Logger.LEVEL_WARN;
+            case "err", "error" -> Logger.LEVEL_ERR;
+            default -> throw new IllegalArgumentException("Unknown level: " + name);
+        };
+    }
+
+    // Milliseconds since the epoch. A time of day is taken to be on the given day.
+    private static long time(String text, long day, long fallback) {
+        if (text == null) return fallback;
+        ZoneId zone = ZoneId.systemDefault();
+        if (text.endsWith("Z")) return Instant.parse(text).toEpochMilli();
+        if (text.contains("T")) return LocalDateTime.parse(text).atZone(zone).toInstant().toEpochMilli();
+        LocalDate date = Instant.ofEpochMilli(day).atZone(zone).toLocalDate();
+        return LocalTime.parse(text).atDate(date).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private void search(Path file, String prefix, PrintWriter out) throws IOException {
+        if (!Files.exists(file)) throw new IOException("No such file.");
+        if (isIndexed(file)) {
+            try (Logger.DumpReader reader = Logger.DumpReader.open(file)) {
+                long start = reader.getStartTime();
+                reader.search(time(from, start, Long.MIN_VALUE), time(to, start, Long.MAX_VALUE), minLevel, pattern,
+                        line -> out.println(prefix + line.getText()));
+            }
+            return;
+        }
+        if (minLevel != Logger.LEVEL_LOG || from != null || to != null) {
+            throw new IOException("Not an indexed dump, so it can't be searched by level or time.");
+        }
+        searchPlain(file, prefix, out);
+    }
+
+    private static boolean isIndexed(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".log") && Files.exists(file.resolveSibling(name.substring(0, name.length() - 4) + ".idx"));
+    }
+
+    // Plain dumps: split on line boundaries, map and scan every chunk on its own task, print them in order.
+    // Only a window of chunks is in flight, so memory stays bounded for files of any size.
+    private void searchPlain(Path file, String prefix, PrintWriter out) throws IOException {
+        int window = 2 * ForkJoinPool.getCommonPoolParallelism();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ArrayDeque<ForkJoinTask<List<String>>> tasks = new ArrayDeque<>();
+            long start = 0;
+            while (start < size) {
+                if (tasks.size() >= window) print(tasks.poll(), prefix, out);
+                long end = lineEnd(channel, Math.min(start + CHUNK_BYTES, size), size);
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                tasks.add(ForkJoinTask.adapt(() -> scan(chunk)).fork());
+                start = end;
+            }
+            while (!tasks.isEmpty()) print(tasks.poll(), prefix, out);
+        }
+    }
+
+    private static void print(ForkJoinTask<List<String>> task, String prefix, PrintWriter out) {
+        for (String line : task.join()) out.println(prefix + line);
+    }
+
+    // Position right after the first line separator at or after position, or the end of the file.
+    private static long lineEnd(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private List<String> scan(ByteBuffer chunk) {
+        List<String> matches = new ArrayList<>();
+        byte[] text = new byte[256];
+        int limit = chunk.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && chunk.get(lineEnd) != '\n') lineEnd++;
+            int textEnd = (lineEnd > lineStart && chunk.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+            int length = textEnd - lineStart;
+            if (length > text.length) text = new byte[Math.max(length, text.length * 2)];
+            chunk.get(lineStart, text, 0, length);
+            String line = new String(text, 0, length, Logger.CONSOLE_CHARSET);
+            if (pattern == null || pattern.matcher(line).find()) matches.add(line);
+            lineStart = lineEnd + 1;
+        }
+        return matches;
+    }
+}
@@ -15,14 +15,72 @@
  */
 package com.github.malthelegend104.logger;
 
-import javax.swing.*;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import java.awt.GraphicsEnvironment;
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -93,6 +151,118 @@ public class Logger {
      * Time in the format of [dd:MM:yyyy hh:mm:ss am/pm]
      */
     public static final byte DAY_MONTH_YEAR_HOUR_MINUTE_SECOND_12H = 13;
+    /**
+     * Time in the format of [hh:mm:ss.SSS]
+     */
+    public static final byte HOUR_MINUTE_SECOND_MILLIS = 14;
+    /**
+     * Time in the format of [hh:mm:ss.SSS am/pm]
+     */
+    public static final byte HOUR_MINUTE_SECOND_12H_MILLIS = 15;
+    /**
+     * Time in the format of [MM:dd hh:mm:ss.SSS]
+     */
+    public static final byte MONTH_DAY_HOUR_MINUTE_SECOND_MILLIS = 16;
+    /**
+     * Time in the format of [MM:dd hh:mm:ss.SSS am/pm]
+     */
+    public static final byte MONTH_DAY_HOUR_MINUTE_SECOND_12H_MILLIS = 17;
+    /**
+     * Time in the format of [dd:MM hh:mm:ss.SSS]
+     */
+    public static final byte DAY_MONTH_HOUR_MINUTE_SECOND_MILLIS = 18;
+    /**
+     * Time in the format of [dd:MM hh:mm:ss.SSS am/pm]
+     */
+    public static final byte DAY_MONTH_HOUR_MINUTE_SECOND_12H_MILLIS = 19;
+    /**
+     * Time in the format of [yyyy:MM:dd hh:mm:ss.SSS]
+     */
+    public static final byte YEAR_MONTH_DAY_HOUR_MINUTE_SECOND_MILLIS = 20;
+    /**
+     * Time in the format of [yyyy:MM:dd hh:mm:ss.SSS am/pm]
+     */
+    public static final byte YEAR_MONTH_DAY_HOUR_MINUTE_SECOND_12H_MILLIS = 21;
+    /**
+     * Time in the format of [yyyy:dd:MM hh:mm:ss.SSS]
+     */
+    public static final byte YEAR_DAY_MONTH_HOUR_MINUTE_SECOND_MILLIS = 22;
+    /**
+     * Time in the format of [yyyy:dd:MM hh:mm:ss.SSS am/pm]
+     */
+    public static final byte YEAR_DAY_MONTH_HOUR_MINUTE_SECOND_12H_MILLIS = 23;
+    /**
+     * Time in the format of [MM:dd:yyyy hh:mm:ss.SSS]
+     */
+    public static final byte MONTH_DAY_YEAR_HOUR_MINUTE_SECOND_MILLIS = 24;
+    /**
+     * Time in the format of [MM:dd:yyyy hh:mm:ss.SSS am/pm]
+     */
+    public static final byte MONTH_DAY_YEAR_HOUR_MINUTE_SECOND_12H_MILLIS = 25;
+    /**
+     * Time in the format of [dd:MM:yyyy hh:mm:ss.SSS]
+     */
+    public static final byte DAY_MONTH_YEAR_HOUR_MINUTE_SECOND_MILLIS = 26;
+    /**
+     * Time in the format of [dd:MM:yyyy hh:mm:ss.SSS am/pm]
+     */
+    public static final byte DAY_MONTH_YEAR_HOUR_MINUTE_SECOND_12H_MILLIS = 27;
+    /**
+     * Time in the format of [hh:mm:ss.SSSSSS]
+     */
+    public static final byte HOUR_MINUTE_SECOND_MICROS = 28;
+    /**
+     * Time in the format of [hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte HOUR_MINUTE_SECOND_12H_MICROS = 29;
+    /**
+     * Time in the format of [MM:dd hh:mm:ss.SSSSSS]
+     */
+    public static final byte MONTH_DAY_HOUR_MINUTE_SECOND_MICROS = 30;
+    /**
+     * Time in the format of [MM:dd hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte MONTH_DAY_HOUR_MINUTE_SECOND_12H_MICROS = 31;
+    /**
+     * Time in the format of [dd:MM hh:mm:ss.SSSSSS]
+     */
+    public static final byte DAY_MONTH_HOUR_MINUTE_SECOND_MICROS = 32;
+    /**
+     * Time in the format of [dd:MM hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte DAY_MONTH_HOUR_MINUTE_SECOND_12H_MICROS = 33;
+    /**
+     * Time in the format of [yyyy:MM:dd hh:mm:ss.SSSSSS]
+     */
+    public static final byte YEAR_MONTH_DAY_HOUR_MINUTE_SECOND_MICROS = 34;
+    /**
+     * Time in the format of [yyyy:MM:dd hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte YEAR_MONTH_DAY_HOUR_MINUTE_SECOND_12H_MICROS = 35;
+    /**
+     * Time in the format of [yyyy:dd:MM hh:mm:ss.SSSSSS]
+     */
+    public static final byte YEAR_DAY_MONTH_HOUR_MINUTE_SECOND_MICROS = 36;
+    /**
+     * Time in the format of [yyyy:dd:MM hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte YEAR_DAY_MONTH_HOUR_MINUTE_SECOND_12H_MICROS = 37;
+    /**
+     * Time in the format of [MM:dd:yyyy hh:mm:ss.SSSSSS]
+     */
+    public static final byte MONTH_DAY_YEAR_HOUR_MINUTE_SECOND_MICROS = 38;
+    /**
+     * Time in the format of [MM:dd:yyyy hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte MONTH_DAY_YEAR_HOUR_MINUTE_SECOND_12H_MICROS = 39;
+    /**
+     * Time in the format of [dd:MM:yyyy hh:mm:ss.SSSSSS]
+     */
+    public static final byte DAY_MONTH_YEAR_HOUR_MINUTE_SECOND_MICROS = 40;
+    /**
+     * Time in the format of [dd:MM:yyyy hh:mm:ss.SSSSSS am/pm]
+     */
+    public static final byte DAY_MONTH_YEAR_HOUR_MINUTE_SECOND_12H_MICROS = 41;
 
 
     // Console Colors
@@ -177,23 +347,114 @@ public class Logger {
      */
     public static final byte CONSOLE_COLOR_WHITE_BRIGHT = 15;
 
+
+    // Log levels, ordered from lowest to highest.
+    /**
+     * The level used by {@link Logger#log}
+     */
+    public static final byte LEVEL_LOG = 0;
+    /**
+     * The level used by {@link Logger#info}
+     */
+    public static final byte LEVEL_INFO = 1;
+    /**
+     * The level used by {@link Logger#warn}
+     */
+    public static final byte LEVEL_WARN = 2;
+    /**
+     * The level used by {@link Logger#err}
+     */
+    public static final byte LEVEL_ERR = 3;
+    /**
+     * Passed into {@link Logger#setLevel(byte)} to turn every level off.
+     */
+    public static final byte LEVEL_OFF = 4;
+
+
+    // Async full queue policies
+    /**
+     * Passed into {@link Logger#enableAsync(int, byte)}. When the queue is full, the logging thread waits until there is room.
+     */
+    public static final byte ASYNC_BLOCK = 0;
+    /**
+     * Passed into {@link Logger#enableAsync(int, byte)}. As the queue fills up, the lowest levels are dropped first.
+     * {@link Logger#log} messages are dropped once the queue is 3/4 full, {@link Logger#info} at 7/8,
+     * {@link Logger#warn} at 15/16, and {@link Logger#err} only when the queue is completely full.
+     */
+    public static final byte ASYNC_DROP_LOWEST_LEVEL = 1;
+    /**
+     * Passed into {@link Logger#enableAsync(int, byte)}. When the queue is full, new messages are dropped and counted.
+     * @see Logger#getDroppedMessageCount()
+     */
+    public static final byte ASYNC_DROP_AND_COUNT = 2;
+
+
+    // Output formats
+    /**
+     * Passed into {@link Logger#setOutputFormat(byte)}. Colored lines with the time in brackets, then the message. The default.
+     */
+    public static final byte FORMAT_TEXT = 0;
+    /**
+     * Passed into {@link Logger#setOutputFormat(byte)}. One JSON object per line, without colors:
+     * {@code {"timestamp":"2022-10-18T14:02:00.000Z","level":"WARN","thread":"main","category":"db","message":"..."}}.
+     * The timestamp is in UTC, {@code category} is only there for named categories, and anything that isn't printable
+     * ASCII is escaped, so lines are valid in any console charset.
+     */
+    public static final byte FORMAT_JSON = 1;
+
     // Console colors
     private static final String CONSOLE_COLOR_RESET = "\u001B[0m";
+    // Charset used by System.out and System.err, lines are encoded with it before being written.
+    // LogQuery reads plain dumps with it too.
+    static final Charset CONSOLE_CHARSET = getConsoleCharset();
+    // Every char below 256 is one byte of the same value in Latin-1, so it never needs the charset.
+    private static final boolean LATIN_1_CONSOLE = CONSOLE_CHARSET.equals(StandardCharsets.ISO_8859_1);
     private static String currentWarn = "\u001B[0;93m"; // Default to yellow
     private static String currentNormal = "\033[0;97m";
     private static String currentError = "\033[0;91m";
     private static String currentInfo = "\033[0;96m";
 
-    // Other final variables
-    private static final JFrame messagePaneParent = new JFrame();
-
     // Instance variables
     private static byte timeFormat;
-    private static DateTimeFormatter dtf;
+    private static volatile TimestampEngine timestamps;
+    private static volatile Clock clock = Clock.systemDefaultZone();
+    private static volatile byte outputFormat = FORMAT_TEXT;
+    private static volatile AsyncWriter asyncWriter;
+    private static volatile RateLimiter rateLimiter;
+    // Level of the static methods, and the parent of every named category.
+    private static final Category ROOT = new Category("", null);
+    private static final Map<String, Category> categories = new ConcurrentHashMap<>();
+    private static volatile byte[][] colorBytes;
+    private static final ThreadLocal<LineEncoder> encoders = ThreadLocal.withInitial(LineEncoder::new);
+
+    // What a queued or encoded message holds.
+    private static final byte KIND_TEXT = 0;
+    private static final byte KIND_INTEGER = 1;
+    private static final byte KIND_CHAR = 2;
+    private static final byte KIND_BOOLEAN = 3;
+    private static final byte KIND_DOUBLE = 4;
+    private static final byte KIND_FLOAT = 5;
+    private static final byte KIND_OBJECT = 6;
+    private static final byte KIND_SUPPLIER = 7;
+    private static final byte KIND_FORMAT = 8;
+    // What a number is called in the rate limit summary line.
+    private static final String[] KIND_NAMES = {null, "A whole number", "A char", "A boolean", "A double", "A float"};
+    private static volatile Sink rollingFile;
+    private static volatile ConsoleBatcher consoleBatcher;
+    private static volatile DirectConsole directConsole;
+    private static volatile boolean compressLogFiles;
+    private static FileCompressor compressor;
+    private static DumpExecutor dumpExecutor;
+    private static boolean shutdownHookAdded;
+    private static volatile Metrics metrics;
+    // Every capturer that is still reachable, with the name it is shown under in the metrics.
+    private static final Map<PrintStreamOutputCapturer, String> capturers = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicInteger loggerCount = new AtomicInteger();
+    private static volatile AlertSink alertSink = AlertSink.pane();
 
     // Things that need to be properly initialized.
     static {
-        messagePaneParent.setAlwaysOnTop(true);
+        encodeColors();
         setTimeFormat(HOUR_MINUTE_SECOND);
     }
 
@@ -208,7 +469,7 @@ public class Logger {
      * @param dtf {@code DateTimeFormatter}, using your own custom format instead of a predefined one.
      */
     public static void setDateTimeFormat(DateTimeFormatter dtf) {
-        Logger.dtf = dtf;
+        Logger.timestamps = new TimestampEngine(dtf);
         Logger.timeFormat = -1;
     }
 
@@ -221,6 +482,80 @@ public class Logger {
         setTimeFormat();
     }
 
+    /**
+     * Set the clock used for the time shown in front of every message. Mainly useful for tests.
+     * @param clock {@code Clock} to read the time from, or null to go back to the system clock in the default time zone.
+     */
+    public static void setClock(Clock clock) {
+        Logger.clock = (clock == null) ? Clock.systemDefaultZone() : clock;
+        // Cached seconds were formatted in the old clock's zone.
+        Logger.timestamps = timestamps.copy();
+    }
+
+
+    /**
+     * Set the format every line is written in, to the console and the rolling file.
+     * Files written by {@link Logger#logConsole()} and {@link Logger#dumpConsole()} while the format is JSON are JSON lines
+     * as well: output that didn't come from the logger is written as {@code {"stream":"out","message":"..."}}.
+     * @param format {@code byte} the format.
+     * @see Logger#FORMAT_TEXT
+     * @see Logger#FORMAT_JSON
+     */
+    public static void setOutputFormat(byte format) {
+        if (format != FORMAT_TEXT && format != FORMAT_JSON) throw new IllegalArgumentException("Unknown output format: " + format);
+        outputFormat = format;
+    }
+
+    /**
+     * Get the format every line is written in.
+     * @return {@code byte} the current format.
+     * @see Logger#setOutputFormat(byte)
+     */
+    public static byte getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * Set the lowest level that is written. Anything below it is skipped before the message is even built.
+     * @param level {@code byte} lowest level to write, or {@link Logger#LEVEL_OFF} to write nothing.
+     * @see Logger#LEVEL_LOG
+     */
+    public static void setLevel(byte level) {
+        ROOT.setLevel(level);
+    }
+
+    /**
+     * Get the lowest level that is written.
+     * @return {@code byte} the current level.
+     * @see Logger#setLevel(byte)
+     */
+    public static byte getLevel() {
+        return ROOT.getLevel();
+    }
+
+    /**
+     * Get the named category, creating it if needed. Names are split by {@code .} into a hierarchy:
+     * {@code "db.pool"} inherits its level from {@code "db"}, which inherits from {@link Logger#setLevel(byte)}.
+     * The same name always returns the same category, so it can be kept in a static field.
+     * @param name {@code String} name of the category, for example {@code "db.pool"}.
+     * @return {@code Category} used to log under that name.
+     */
+    public static Category named(String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("A category needs a name.");
+        Category category = categories.get(name);
+        if (category != null) return category;
+        int dot = name.lastIndexOf('.');
+        Category parent = (dot < 0) ? ROOT : named(name.substring(0, dot));
+        synchronized (Category.class) {
+            category = categories.get(name);
+            if (category == null) {
+                category = new Category(name, parent);
+                categories.put(name, category);
+            }
+            return category;
+        }
+    }
+
 
     //----------------------------------------
     //----------------------------------------
@@ -272,6 +607,7 @@ public class Logger {
         } else {
             setWarnColor(CONSOLE_COLOR_YELLOW_BRIGHT);
         }
+        encodeColors();
     }
 
     /**
@@ -315,6 +651,7 @@ public class Logger {
         } else {
             setNormalColor(CONSOLE_COLOR_WHITE_BRIGHT);
         }
+        encodeColors();
     }
 
     /**
@@ -358,6 +695,7 @@ public class Logger {
         } else {
             setErrorColor(CONSOLE_COLOR_RED_BRIGHT);
         }
+        encodeColors();
     }
 
     /**
@@ -401,43 +739,437 @@ public class Logger {
         } else {
             setInfoColor(CONSOLE_COLOR_CYAN_BRIGHT);
         }
+        encodeColors();
     }
 
 
     private static void setTimeFormat(){
-        if (timeFormat == 0){
-            dtf = DateTimeFormatter.ofPattern("HH:mm:ss");
-        } else if (timeFormat == 1){
-            dtf = DateTimeFormatter.ofPattern("hh:mm:ss a");
-        } else if (timeFormat == 2){
-            dtf = DateTimeFormatter.ofPattern("MM/dd hh:mm:ss");
-        } else if (timeFormat == 3){
-            dtf = DateTimeFormatter.ofPattern("MM/dd hh:mm:ss a");
-        } else if (timeFormat == 4){
-            dtf = DateTimeFormatter.ofPattern("dd/MM hh:mm:ss");
-        } else if (timeFormat == 5){
-            dtf = DateTimeFormatter.ofPattern("dd/MM hh:mm:ss a");
-        } else if (timeFormat == 6){
-            dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd hh:mm:ss");
-        } else if (timeFormat == 7){
-            dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd hh:mm:ss a");
-        } else if (timeFormat == 8){
-            dtf = DateTimeFormatter.ofPattern("yyyy/dd/MM hh:mm:ss");
-        } else if (timeFormat == 9){
-            dtf = DateTimeFormatter.ofPattern("yyyy/dd/MM hh:mm:ss a");
-        } else if (timeFormat == 10){
-            dtf = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss");
-        } else if (timeFormat == 11){
-            dtf = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm:ss a");
-        } else if (timeFormat == 12){
-            dtf = DateTimeFormatter.ofPattern("dd/MM/yyyy hh:mm:ss");
-        } else if (timeFormat == 13){
-            dtf = DateTimeFormatter.ofPattern("dd/MM/yyyy hh:mm:ss a");
-        }
-    }
-
-    private static String getTime(){
-        return dtf.format(LocalDateTime.now());
+        if (timeFormat < HOUR_MINUTE_SECOND || timeFormat > DAY_MONTH_YEAR_HOUR_MINUTE_SECOND_12H_MICROS) return;
+        int base = timeFormat % 14;
+        int fractionDigits = (timeFormat >= HOUR_MINUTE_SECOND_MICROS) ? 6 : (timeFormat >= HOUR_MINUTE_SECOND_MILLIS) ? 3 : 0;
+        // Everything up to the seconds; the fraction and am/pm are added after.
+        String pattern;
+        if (base == 0){
+            pattern = "HH:mm:ss";
+        } else if (base == 1){
+            pattern = "hh:mm:ss";
+        } else if (base == 2 || base == 3){
+            pattern = "MM/dd hh:mm:ss";
+        } else if (base == 4 || base == 5){
+            pattern = "dd/MM hh:mm:ss";
+        } else if (base == 6 || base == 7){
+            pattern = "yyyy/MM/dd hh:mm:ss";
+        } else if (base == 8 || base == 9){
+            pattern = "yyyy/dd/MM hh:mm:ss";
+        } else if (base == 10 || base == 11){
+            pattern = "MM/dd/yyyy hh:mm:ss";
+        } else {
+            pattern = "dd/MM/yyyy hh:mm:ss";
+        }
+        String suffix = (base % 2 == 1) ? " a" : null;
+        timestamps = new TimestampEngine(pattern, suffix, fractionDigits);
+    }
+
+    private static Charset getConsoleCharset(){
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        try {
+            if (name != null) return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            // Unknown charset, use the default like PrintStream does.
+        }
+        return Charset.defaultCharset();
+    }
+
+    // Current time in nanoseconds since the epoch, only as precise as the time format needs.
+    private static long now(){
+        Clock current = clock;
+        if (timestamps.needsNanos()) {
+            Instant instant = current.instant();
+            return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+        }
+        return current.millis() * 1_000_000L;
+    }
+
+    // Keeps the encoded colors in step with the color Strings, so lines never have to encode them.
+    private static void encodeColors(){
+        colorBytes = new byte[][]{
+                currentNormal.getBytes(CONSOLE_CHARSET),
+                currentInfo.getBytes(CONSOLE_CHARSET),
+                currentWarn.getBytes(CONSOLE_CHARSET),
+                currentError.getBytes(CONSOLE_CHARSET)
+        };
+    }
+
+    // Every static log method ends up in one of these.
+    private static void emit(Category category, byte level, String message){
+        if (level < category.effectiveLevel) return;
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null && !limiter.tryAcquire(category, level, CallSite.find(), message)) return;
+        emitText(category, level, message);
+    }
+
+    // Text that has already been let through.
+    private static void emitText(Category category, byte level, String message){
+        long time = now();
+        AsyncWriter writer = asyncWriter;
+        AsyncWriter.Event event = (writer == null) ? null : writer.claim(category, level, KIND_TEXT, time);
+        if (event != null) {
+            event.message = message;
+            writer.publish(event);
+            return;
+        }
+        LineEncoder encoder = encoder();
+        encoder.begin(category, level, time, Thread.currentThread());
+        encoder.append(message);
+        write(level, encoder);
+    }
+
+    private static void emitNumber(Category category, byte level, long number, byte kind){
+        if (level < category.effectiveLevel) return;
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null && !limiter.tryAcquire(category, level, CallSite.find(), KIND_NAMES[kind])) return;
+        long time = now();
+        AsyncWriter writer = asyncWriter;
+        AsyncWriter.Event event = (writer == null) ? null : writer.claim(category, level, kind, time);
+        if (event != null) {
+            event.number = number;
+            writer.publish(event);
+            return;
+        }
+        LineEncoder encoder = encoder();
+        encoder.begin(category, level, time, Thread.currentThread());
+        encoder.appendNumber(kind, number);
+        write(level, encoder);
+    }
+
+    private static void emitDecimal(Category category, byte level, double decimal, byte kind){
+        if (level < category.effectiveLevel) return;
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null && !limiter.tryAcquire(category, level, CallSite.find(), KIND_NAMES[kind])) return;
+        long time = now();
+        AsyncWriter writer = asyncWriter;
+        AsyncWriter.Event event = (writer == null) ? null : writer.claim(category, level, kind, time);
+        if (event != null) {
+            event.decimal = decimal;
+            writer.publish(event);
+            return;
+        }
+        LineEncoder encoder = encoder();
+        encoder.begin(category, level, time, Thread.currentThread());
+        encoder.appendDecimal(kind, decimal);
+        write(level, encoder);
+    }
+
+    // Objects, suppliers and formats; turned into text only once the line is written.
+    private static void emitLazy(Category category, byte level, byte kind, String format, int argCount, Object first, Object second, Object[] rest){
+        if (level < category.effectiveLevel) return;
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null) {
+            // Formats are their own key. Every lambda has its own class, so suppliers are told apart by where they were written.
+            Object key = (kind == KIND_FORMAT) ? format : (kind == KIND_SUPPLIER && first != null) ? first.getClass() : CallSite.find();
+            String template = (kind == KIND_FORMAT) ? format : (kind == KIND_SUPPLIER || first == null) ? null : first.getClass().getName();
+            if (!limiter.tryAcquire(category, level, key, template)) return;
+        }
+        long time = now();
+        AsyncWriter writer = asyncWriter;
+        AsyncWriter.Event event = (writer == null) ? null : writer.claim(category, level, kind, time);
+        if (event != null) {
+            event.message = format;
+            event.number = argCount;
+            event.first = first;
+            event.second = second;
+            event.rest = rest;
+            writer.publish(event);
+            return;
+        }
+        LineEncoder encoder = encoder();
+        try {
+            encoder.begin(category, level, time, Thread.currentThread());
+            encoder.appendLazy(kind, format, argCount, first, second, rest);
+            write(level, encoder);
+        } finally {
+            // The object or supplier may have thrown halfway through the line.
+            encoder.release();
+        }
+    }
+
+    // The thread's encoder, or a new one if the thread logs while it is writing another line,
+    // like a toString() or supplier that logs, or a sink that reports an error.
+    private static LineEncoder encoder(){
+        LineEncoder encoder = encoders.get();
+        return encoder.busy ? new LineEncoder() : encoder;
+    }
+
+    // Writes a String message that didn't come from a log method.
+    private static void writeText(byte level, long time, String message){
+        LineEncoder encoder = encoder();
+        encoder.begin(ROOT, level, time, Thread.currentThread());
+        encoder.append(message);
+        write(level, encoder);
+    }
+
+    // Writes the finished line in the encoder to the current stream for the level.
+    private static void write(byte level, LineEncoder encoder){
+        encoder.end();
+        ConsoleBatcher batcher = consoleBatcher;
+        if (batcher != null) {
+            batcher.write(level, encoder.bytes(), 0, encoder.length());
+        } else {
+            writeConsole(level == LEVEL_ERR, encoder.bytes(), 0, encoder.length());
+        }
+        Metrics counters = metrics;
+        if (counters != null) counters.lineWritten(level, encoder.length());
+        Sink file = rollingFile;
+        if (file != null) {
+            try {
+                file.write(encoder.bytes(), encoder.textStart(), encoder.textLength());
+            } catch (IOException e) {
+                // Reported once by the appender itself.
+            }
+        }
+        encoder.release();
+    }
+
+    // Writes finished lines to the current stream, or straight to the file descriptor when the direct console is enabled.
+    private static void writeConsole(boolean error, byte[] b, int off, int len){
+        DirectConsole direct = directConsole;
+        if (direct != null && direct.write(error ? (byte) 1 : (byte) 0, b, off, len)) return;
+        PrintStream stream = error ? System.err : System.out;
+        stream.write(b, off, len);
+    }
+
+    // Makes sure queued and buffered lines are written before the JVM exits.
+    private static synchronized void addShutdownHook(){
+        if (shutdownHookAdded) return;
+        Runtime.getRuntime().addShutdownHook(new Thread(Logger::shutdown, "Logger-Shutdown"));
+        shutdownHookAdded = true;
+    }
+
+    private static void shutdown(){
+        awaitDumps(60_000);
+        disableRateLimit();
+        disableAsync();
+        disableBatchedConsole();
+        stopRollingFile();
+        awaitCompression(60_000);
+        SpillCaptureBuffer.deleteAll();
+    }
+
+
+    //----------------------------------------
+    //----------------------------------------
+    // Async Logging
+    //----------------------------------------
+    //----------------------------------------
+    /**
+     * Enables async logging with a capacity of 8192 messages, blocking when the queue is full.
+     * @see Logger#enableAsync(int, byte)
+     */
+    public static void enableAsync(){
+        enableAsync(8192, ASYNC_BLOCK);
+    }
+
+    /**
+     * Enables async logging. While enabled, {@link Logger#log}, {@link Logger#info}, {@link Logger#warn} and
+     * {@link Logger#err} only place the message into a preallocated queue, and a single background thread writes
+     * them to the current {@link System#out} and {@link System#err}.
+     * Anything still in the queue is written before the JVM shuts down.
+     * @param capacity {@code int} amount of messages the queue can hold. Rounded up to the next power of two.
+     * @param fullPolicy {@code byte} what to do when the queue is full.
+     * @see Logger#ASYNC_BLOCK
+     * @see Logger#ASYNC_DROP_LOWEST_LEVEL
+     * @see Logger#ASYNC_DROP_AND_COUNT
+     */
+    public static synchronized void enableAsync(int capacity, byte fullPolicy){
+        if (capacity < 2) throw new IllegalArgumentException("Capacity must be at least 2.");
+        if (fullPolicy < ASYNC_BLOCK || fullPolicy > ASYNC_DROP_AND_COUNT) {
+            throw new IllegalArgumentException("Unknown full queue policy: " + fullPolicy);
+        }
+        disableAsync();
+        addShutdownHook();
+        asyncWriter = new AsyncWriter(capacity, fullPolicy);
+    }
+
+    /**
+     * Disables async logging. Blocks until every message that was already queued has been written.
+     */
+    public static synchronized void disableAsync(){
+        AsyncWriter writer = asyncWriter;
+        if (writer == null) return;
+        asyncWriter = null;
+        writer.shutdown();
+    }
+
+    /**
+     * Tells you whether async logging is enabled.
+     * @return {@code boolean} true if async logging is enabled.
+     */
+    public static boolean isAsync(){
+        return asyncWriter != null;
+    }
+
+    /**
+     * Blocks until every message that has been queued so far has been written. Does nothing if async logging is disabled.
+     */
+    public static void flushAsync(){
+        AsyncWriter writer = asyncWriter;
+        if (writer != null) writer.awaitDrained();
+    }
+
+    /**
+     * Returns the amount of messages that have been dropped because the async queue was full.
+     * @return {@code long} dropped messages since async logging was last enabled.
+     */
+    public static long getDroppedMessageCount(){
+        AsyncWriter writer = asyncWriter;
+        return (writer == null) ? 0 : writer.getDropped();
+    }
+
+    //----------------------------------------
+    //----------------------------------------
+    // Batched Console
+    //----------------------------------------
+    //----------------------------------------
+    /**
+     * Enables batched console output with a 64 KB buffer, flushed at least every 50 milliseconds.
+     * @see Logger#enableBatchedConsole(int, long)
+     */
+    public static void enableBatchedConsole(){
+        enableBatchedConsole(64 * 1024, 50);
+    }
+
+    /**
+     * Enables batched console output. Instead of every line being its own write to the console, lines are collected
+     * and written together once the buffer is full, once {@code flushIntervalMillis} has passed, or right away when
+     * an {@link Logger#err} line is logged. Lines stay in the order they were logged, across both
+     * {@link System#out} and {@link System#err}.
+     * <p>
+     * Only lines from the logger are batched. Anything printed straight to {@link System#out} can show up before
+     * logged lines that are still waiting, call {@link Logger#flushConsole()} first if that matters.
+     * Batched lines are written before {@link Logger#logConsole()} and {@link Logger#dumpConsole()} make their file,
+     * and before the JVM shuts down.
+     * @param bufferSize {@code int} bytes that are collected before they are written.
+     * @param flushIntervalMillis {@code long} longest time a line waits before it is written.
+     */
+    public static synchronized void enableBatchedConsole(int bufferSize, long flushIntervalMillis){
+        if (bufferSize < 1) throw new IllegalArgumentException("Buffer size must be at least 1.");
+        if (flushIntervalMillis < 1) throw new IllegalArgumentException("Flush interval must be at least 1 millisecond.");
+        disableBatchedConsole();
+        addShutdownHook();
+        consoleBatcher = new ConsoleBatcher(bufferSize, flushIntervalMillis);
+    }
+
+    /**
+     * Disables batched console output, writing every line that is still waiting.
+     */
+    public static synchronized void disableBatchedConsole(){
+        ConsoleBatcher batcher = consoleBatcher;
+        if (batcher == null) return;
+        consoleBatcher = null;
+        batcher.close();
+    }
+
+    /**
+     * Tells you whether batched console output is enabled.
+     * @return {@code boolean} true if batched console output is enabled.
+     */
+    public static boolean isBatchedConsole(){
+        return consoleBatcher != null;
+    }
+
+    /**
+     * Enables the direct console. Lines are written with a {@link FileOutputStream} opened on {@link FileDescriptor#out}
+     * and {@link FileDescriptor#err}, skipping {@link PrintStream}, its lock and its buffers.
+     * Writers of each stream are kept apart with a {@link ReentrantLock}, which doesn't pin virtual threads.
+     * Lines are still captured by every {@link Logger}.
+     * <p>
+     * Lines always go to the real standard output and error of the process, even if {@link System#out} or
+     * {@link System#err} have been replaced. Text printed with {@link PrintStream#print} and not yet flushed can show up
+     * after lines that were logged later.
+     * If writing to the file descriptor fails, the logger goes back to {@link System#out} and {@link System#err}.
+     */
+    public static synchronized void enableDirectConsole(){
+        if (directConsole == null) directConsole = new DirectConsole();
+    }
+
+    /**
+     * Disables the direct console, lines go through {@link System#out} and {@link System#err} again.
+     */
+    public static synchronized void disableDirectConsole(){
+        directConsole = null;
+    }
+
+    /**
+     * Tells you whether the direct console is enabled.
+     * @return {@code boolean} true if lines are written straight to the file descriptors.
+     */
+    public static boolean isDirectConsole(){
+        return directConsole != null;
+    }
+
+    /**
+     * Writes every line that is queued for async logging or waiting in the console batch, and waits until every
+     * capture has everything written to the console so far.
+     * Blocks until they have been written.
+     */
+    public static void flushConsole(){
+        flushAsync();
+        ConsoleBatcher batcher = consoleBatcher;
+        if (batcher != null) batcher.flush();
+        OutputStreamCombiner.flushSubscribers();
+    }
+
+    //----------------------------------------
+    //----------------------------------------
+    // Rate Limiting
+    //----------------------------------------
+    //----------------------------------------
+    /**
+     * Enables rate limiting, letting through 10 messages a second of each kind, with bursts of up to 20.
+     * @see Logger#enableRateLimit(double, int)
+     */
+    public static void enableRateLimit(){
+        enableRateLimit(10, 20);
+    }
+
+    /**
+     * Enables rate limiting. Format messages are limited by their format, and supplier messages by where the supplier
+     * was written. Every other message, Strings, numbers and objects, is limited by the line it was logged from, found by
+     * walking the stack, which costs a few microseconds per message while rate limiting is enabled. Each of these gets
+     * its own token bucket at each level, so one message repeated thousands of times a second doesn't hide everything else.
+     * Past 4096 of them, messages from anywhere new share one bucket until idle buckets are let go of.
+     * <p>
+     * Messages over the limit are dropped before they are formatted, and collapsed into a line like
+     * {@code Last message repeated 4213 times: Connection to {} failed} written once a second, at the level of the
+     * message. Messages limited by where they were logged from name the first message and the line instead.
+     * @param messagesPerSecond {@code double} messages of each kind let through every second, on average.
+     * @param burst {@code int} messages of each kind that can be let through at once, after a quiet period.
+     */
+    public static synchronized void enableRateLimit(double messagesPerSecond, int burst){
+        if (!(messagesPerSecond > 0)) throw new IllegalArgumentException("Messages per second must be more than 0.");
+        if (burst < 1) throw new IllegalArgumentException("Burst must be at least 1.");
+        disableRateLimit();
+        addShutdownHook();
+        rateLimiter = new RateLimiter(messagesPerSecond, burst);
+    }
+
+    /**
+     * Disables rate limiting. Messages that were dropped since the last summary line are reported one last time.
+     */
+    public static synchronized void disableRateLimit(){
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null) return;
+        rateLimiter = null;
+        limiter.shutdown();
+    }
+
+    /**
+     * Returns the amount of messages that were dropped by rate limiting.
+     * @return {@code long} dropped messages since rate limiting was last enabled.
+     */
+    public static long getSuppressedMessageCount(){
+        RateLimiter limiter = rateLimiter;
+        return (limiter == null) ? 0 : limiter.getSuppressed();
     }
 
     //----------------------------------------
@@ -450,70 +1182,113 @@ public class Logger {
      * @param message {@code String} that you want to output to console.
      */
     public static void log(String message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emit(ROOT, LEVEL_LOG, message);
     }
     /**
      * Log given object to console.
+     * {@link Object#toString()} is only called when the line is written, never if the level is disabled.
      * @param message {@code Object} that you want to output to console.
      */
     public static void log(Object message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitLazy(ROOT, LEVEL_LOG, KIND_OBJECT, null, 0, message, null, null);
     }
     /**
      * Log given primitive to console.
      * @param message {@code int} that you want to output to console.
      */
     public static void log(int message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_LOG, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console.
      * @param message {@code double} that you want to output to console.
      */
     public static void log(double message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_LOG, message, KIND_DOUBLE);
     }
     /**
      * Log given primitive to console.
      * @param message {@code char} that you want to output to console.
      */
     public static void log(char message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_LOG, message, KIND_CHAR);
     }
     /**
      * Log given primitive to console.
      * @param message {@code byte} that you want to output to console.
      */
     public static void log(byte message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_LOG, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console.
      * @param message {@code short} that you want to output to console.
      */
     public static void log(short message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_LOG, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console.
      * @param message {@code long} that you want to output to console.
      */
     public static void log(long message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_LOG, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console.
      * @param message {@code float} that you want to output to console.
      */
     public static void log(float message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_LOG, message, KIND_FLOAT);
     }
     /**
      * Log given primitive to console.
      * @param message {@code boolean} that you want to output to console.
      */
     public static void log(boolean message){
-        System.out.println(currentNormal + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_LOG, message ? 1 : 0, KIND_BOOLEAN);
+    }
+    /**
+     * Log a message built from a format to console.
+     * The {@code {}} in the format is replaced with the argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the argument goes.
+     * @param arg {@code Object} that replaces the {@code {}}.
+     */
+    public static void log(String format, Object arg){
+        emitLazy(ROOT, LEVEL_LOG, KIND_FORMAT, format, 1, arg, null, null);
+    }
+    /**
+     * Log a message built from a format to console.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param arg1 {@code Object} that replaces the first {@code {}}.
+     * @param arg2 {@code Object} that replaces the second {@code {}}.
+     */
+    public static void log(String format, Object arg1, Object arg2){
+        emitLazy(ROOT, LEVEL_LOG, KIND_FORMAT, format, 2, arg1, arg2, null);
+    }
+    /**
+     * Log a message built from a format to console.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+     */
+    public static void log(String format, Object... args){
+        emitLazy(ROOT, LEVEL_LOG, KIND_FORMAT, format, -1, null, null, args);
+    }
+    /**
+     * Log the message given by the supplier to console.
+     * The supplier is only called when the line is written, never if the level is disabled. With async logging that is
+     * on the writer thread, and anything the supplier logs itself is written right away, before its own line.
+     * <p>
+     * Named apart from {@link Logger#log(String)}, so {@code Logger.log(null)} isn't ambiguous.
+     * @param message {@code Supplier} of the message that you want to output to console.
+     */
+    public static void logLazy(Supplier<String> message){
+        emitLazy(ROOT, LEVEL_LOG, KIND_SUPPLIER, null, 0, message, null, null);
     }
 
     // Logs for warnings
@@ -522,142 +1297,222 @@ public class Logger {
      * @param message {@code String} that you want to output to console.
      */
     public static void warn(String message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emit(ROOT, LEVEL_WARN, message);
     }
     /**
      * Log given object to console, using the set warning color.
+     * {@link Object#toString()} is only called when the line is written, never if the level is disabled.
      * @param message {@code Object} that you want to output to console.
      */
     public static void warn(Object message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitLazy(ROOT, LEVEL_WARN, KIND_OBJECT, null, 0, message, null, null);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code int} that you want to output to console.
      */
     public static void warn(int message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_WARN, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code double} that you want to output to console.
      */
     public static void warn(double message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_WARN, message, KIND_DOUBLE);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code char} that you want to output to console.
      */
     public static void warn(char message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_WARN, message, KIND_CHAR);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code byte} that you want to output to console.
      */
     public static void warn(byte message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_WARN, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code short} that you want to output to console.
      */
     public static void warn(short message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_WARN, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code long} that you want to output to console.
      */
     public static void warn(long message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_WARN, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code float} that you want to output to console.
      */
     public static void warn(float message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_WARN, message, KIND_FLOAT);
     }
     /**
      * Log given primitive to console, using the set warning color.
      * @param message {@code boolean} that you want to output to console.
      */
     public static void warn(boolean message){
-        System.out.println(currentWarn + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_WARN, message ? 1 : 0, KIND_BOOLEAN);
     }
-
-    // Logs for Info
     /**
-     * Log given String to console, using the set info color.
+     * Log a message built from a format to console, using the set warning color.
+     * The {@code {}} in the format is replaced with the argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the argument goes.
+     * @param arg {@code Object} that replaces the {@code {}}.
+     */
+    public static void warn(String format, Object arg){
+        emitLazy(ROOT, LEVEL_WARN, KIND_FORMAT, format, 1, arg, null, null);
+    }
+    /**
+     * Log a message built from a format to console, using the set warning color.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param arg1 {@code Object} that replaces the first {@code {}}.
+     * @param arg2 {@code Object} that replaces the second {@code {}}.
+     */
+    public static void warn(String format, Object arg1, Object arg2){
+        emitLazy(ROOT, LEVEL_WARN, KIND_FORMAT, format, 2, arg1, arg2, null);
+    }
+    /**
+     * Log a message built from a format to console, using the set warning color.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+     */
+    public static void warn(String format, Object... args){
+        emitLazy(ROOT, LEVEL_WARN, KIND_FORMAT, format, -1, null, null, args);
+    }
+    /**
+     * Log the message given by the supplier to console, using the set warning color.
+     * The supplier is only called when the line is written, never if the level is disabled.
+     * @param message {@code Supplier} of the message that you want to output to console.
+     */
+    public static void warnLazy(Supplier<String> message){
+        emitLazy(ROOT, LEVEL_WARN, KIND_SUPPLIER, null, 0, message, null, null);
+    }
+
+    // Logs for Info
+    /**
+     * Log given String to console, using the set info color.
      * @param message {@code String} that you want to output to console.
      */
     public static void info(String message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emit(ROOT, LEVEL_INFO, message);
     }
     /**
      * Log given object to console, using the set info color.
+     * {@link Object#toString()} is only called when the line is written, never if the level is disabled.
      * @param message {@code Object} that you want to output to console.
      */
     public static void info(Object message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitLazy(ROOT, LEVEL_INFO, KIND_OBJECT, null, 0, message, null, null);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code int} that you want to output to console.
      */
     public static void info(int message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_INFO, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code double} that you want to output to console.
      */
     public static void info(double message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_INFO, message, KIND_DOUBLE);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code char} that you want to output to console.
      */
     public static void info(char message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_INFO, message, KIND_CHAR);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code byte} that you want to output to console.
      */
     public static void info(byte message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_INFO, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code short} that you want to output to console.
      */
     public static void info(short message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_INFO, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code long} that you want to output to console.
      */
     public static void info(long message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_INFO, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code float} that you want to output to console.
      */
     public static void info(float message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_INFO, message, KIND_FLOAT);
     }
     /**
      * Log given primitive to console, using the set info color.
      * @param message {@code boolean} that you want to output to console.
      */
     public static void info(boolean message){
-        System.out.println(currentInfo + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_INFO, message ? 1 : 0, KIND_BOOLEAN);
+    }
+    /**
+     * Log a message built from a format to console, using the set info color.
+     * The {@code {}} in the format is replaced with the argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the argument goes.
+     * @param arg {@code Object} that replaces the {@code {}}.
+     */
+    public static void info(String format, Object arg){
+        emitLazy(ROOT, LEVEL_INFO, KIND_FORMAT, format, 1, arg, null, null);
+    }
+    /**
+     * Log a message built from a format to console, using the set info color.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param arg1 {@code Object} that replaces the first {@code {}}.
+     * @param arg2 {@code Object} that replaces the second {@code {}}.
+     */
+    public static void info(String format, Object arg1, Object arg2){
+        emitLazy(ROOT, LEVEL_INFO, KIND_FORMAT, format, 2, arg1, arg2, null);
+    }
+    /**
+     * Log a message built from a format to console, using the set info color.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+     */
+    public static void info(String format, Object... args){
+        emitLazy(ROOT, LEVEL_INFO, KIND_FORMAT, format, -1, null, null, args);
+    }
+    /**
+     * Log the message given by the supplier to console, using the set info color.
+     * The supplier is only called when the line is written, never if the level is disabled.
+     * @param message {@code Supplier} of the message that you want to output to console.
+     */
+    public static void infoLazy(Supplier<String> message){
+        emitLazy(ROOT, LEVEL_INFO, KIND_SUPPLIER, null, 0, message, null, null);
     }
 
     // Logs for error out.
@@ -666,70 +1521,110 @@ public class Logger {
      * @param message {@code String} that you want to output to console.
      */
     public static void err(String message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emit(ROOT, LEVEL_ERR, message);
     }
     /**
      * Log given object to console, using stderr.
+     * {@link Object#toString()} is only called when the line is written, never if the level is disabled.
      * @param message {@code Object} that you want to output to console.
      */
     public static void err(Object message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitLazy(ROOT, LEVEL_ERR, KIND_OBJECT, null, 0, message, null, null);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code int} that you want to output to console.
      */
     public static void err(int message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_ERR, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code double} that you want to output to console.
      */
     public static void err(double message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_ERR, message, KIND_DOUBLE);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code char} that you want to output to console.
      */
     public static void err(char message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_ERR, message, KIND_CHAR);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code byte} that you want to output to console.
      */
     public static void err(byte message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_ERR, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code short} that you want to output to console.
      */
     public static void err(short message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_ERR, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code long} that you want to output to console.
      */
     public static void err(long message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_ERR, message, KIND_INTEGER);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code float} that you want to output to console.
      */
     public static void err(float message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitDecimal(ROOT, LEVEL_ERR, message, KIND_FLOAT);
     }
     /**
      * Log given primitive to console, using stderr.
      * @param message {@code boolean} that you want to output to console.
      */
     public static void err(boolean message){
-        System.err.println(currentError + '[' + getTime() + "]\t" + message + CONSOLE_COLOR_RESET);
+        emitNumber(ROOT, LEVEL_ERR, message ? 1 : 0, KIND_BOOLEAN);
+    }
+    /**
+     * Log a message built from a format to console, using stderr.
+     * The {@code {}} in the format is replaced with the argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the argument goes.
+     * @param arg {@code Object} that replaces the {@code {}}.
+     */
+    public static void err(String format, Object arg){
+        emitLazy(ROOT, LEVEL_ERR, KIND_FORMAT, format, 1, arg, null, null);
+    }
+    /**
+     * Log a message built from a format to console, using stderr.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param arg1 {@code Object} that replaces the first {@code {}}.
+     * @param arg2 {@code Object} that replaces the second {@code {}}.
+     */
+    public static void err(String format, Object arg1, Object arg2){
+        emitLazy(ROOT, LEVEL_ERR, KIND_FORMAT, format, 2, arg1, arg2, null);
+    }
+    /**
+     * Log a message built from a format to console, using stderr.
+     * Each {@code {}} in the format is replaced with the next argument. The message is only built when the line is written,
+     * never if the level is disabled.
+     * @param format {@code String} containing {@code {}} where the arguments go.
+     * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+     */
+    public static void err(String format, Object... args){
+        emitLazy(ROOT, LEVEL_ERR, KIND_FORMAT, format, -1, null, null, args);
+    }
+    /**
+     * Log the message given by the supplier to console, using stderr.
+     * The supplier is only called when the line is written, never if the level is disabled.
+     * @param message {@code Supplier} of the message that you want to output to console.
+     */
+    public static void errLazy(Supplier<String> message){
+        emitLazy(ROOT, LEVEL_ERR, KIND_SUPPLIER, null, 0, message, null, null);
     }
 
 
@@ -738,7 +1633,7 @@ public class Logger {
      * @param message {@code String} containing the message you wish to display.
      */
     public static void messagePane(String message){
-        JOptionPane.showMessageDialog(messagePaneParent, message);
+        Panes.show(message, null, Panes.PLAIN);
     }
 
     /**
@@ -747,7 +1642,7 @@ public class Logger {
      * @param title {@code String} containing what you wish the title to be.
      */
     public static void messagePane(String message, String title){
-        JOptionPane.showMessageDialog(messagePaneParent, message, title, JOptionPane.PLAIN_MESSAGE);
+        Panes.show(message, title, Panes.PLAIN);
     }
 
     /**
@@ -755,7 +1650,7 @@ public class Logger {
      * @param message {@code String} containing the message you wish to display.
      */
     public static void errorPane(String message){
-        JOptionPane.showMessageDialog(messagePaneParent, message, "ERROR", JOptionPane.ERROR_MESSAGE);
+        Panes.show(message, "ERROR", Panes.ERROR);
     }
 
     /**
@@ -764,7 +1659,812 @@ public class Logger {
      * @param title {@code String} containing what you wish the title to be.
      */
     public static void errorPane(String message, String title){
-        JOptionPane.showMessageDialog(messagePaneParent, message, title, JOptionPane.ERROR_MESSAGE);
+        Panes.show(message, title, Panes.ERROR);
+    }
+
+    /**
+     * Sets how {@link Logger#dumpConsole()} lets someone know that a fatal error has occurred.
+     * Defaults to {@link AlertSink#pane()}. Use any of the other sinks to never load Swing at all.
+     * @param sink {@code AlertSink} to alert through.
+     * @see AlertSink
+     */
+    public static void setAlertSink(AlertSink sink){
+        if (sink == null) throw new IllegalArgumentException("Alert sink can't be null.");
+        alertSink = sink;
+    }
+
+    /**
+     * Where {@link Logger#dumpConsole()} sends its alert. Any lambda works as a callback:
+     * <pre>{@code
+     * Logger.setAlertSink((message, file) -> pager.send(message));
+     * }</pre>
+     */
+    @FunctionalInterface
+    public interface AlertSink {
+        /**
+         * Called once the dump file has been written.
+         * @param message {@code String} telling the user what happened and where the dump is.
+         * @param file {@code Path} of the dump file.
+         */
+        void alert(String message, Path file);
+
+        /**
+         * Shows the message in an error pane, like {@link Logger#errorPane(String)}. The default.
+         * @return {@code AlertSink} showing an error pane.
+         */
+        static AlertSink pane(){
+            return (message, file) -> errorPane(message);
+        }
+
+        /**
+         * Logs the message with {@link Logger#err(String)}.
+         * @return {@code AlertSink} logging the message.
+         */
+        static AlertSink console(){
+            return (message, file) -> err(message);
+        }
+
+        /**
+         * Adds a line with the time and the dump file to a marker file, for something else (a monitoring agent, a cron
+         * job) to pick up. The marker file is created if it doesn't exist.
+         * @param markerFile {@code String} path of the marker file.
+         * @return {@code AlertSink} writing to the marker file.
+         */
+        static AlertSink fileMarker(String markerFile){
+            Path marker = Path.of(markerFile);
+            return (message, file) -> {
+                try {
+                    Files.writeString(marker, Instant.now() + "\t" + file + System.lineSeparator(),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    Logger.log("Failed to write the marker file.");
+                    e.printStackTrace();
+                }
+            };
+        }
+    }
+
+
+    //----------------------------------------
+    //----------------------------------------
+    // Rolling Files
+    //----------------------------------------
+    //----------------------------------------
+    /**
+     * Start writing every logged line to a file as it is logged, without the console colors.
+     * Files are named {@code <baseName>-000001.log}, {@code <baseName>-000002.log} and so on. A new file is started
+     * once the current one would grow past {@code maxBytes}, or has been open for {@code rotateMillis}.
+     * Only the newest {@code maxFiles} files are kept, older ones are deleted.
+     * If files with the same base name already exist, numbering continues after the highest one.
+     * Lines are written to the file by a background thread, with up to 1 MB of lines waiting for it.
+     * If that fills up, logging waits for room.
+     * @param directory {@code String} path of the directory to write the files to.
+     * @param baseName {@code String} start of every file name.
+     * @param maxBytes {@code long} size a file can grow to before a new one is started, 0 for no limit.
+     * @param rotateMillis {@code long} time a file is written to before a new one is started, 0 for no limit.
+     * @param maxFiles {@code int} amount of files to keep, 0 to keep all of them.
+     * @see Logger#startRollingFile(String, String, long, long, int, int, byte)
+     */
+    public static void startRollingFile(String directory, String baseName, long maxBytes, long rotateMillis, int maxFiles){
+        startRollingFile(directory, baseName, maxBytes, rotateMillis, maxFiles, 1024 * 1024, ASYNC_BLOCK);
+    }
+
+    /**
+     * Start writing every logged line to a file as it is logged, without the console colors.
+     * Lines are written to the file by a background thread, so a slow disk never slows down logging to the console.
+     * Lines are buffered for at most 200 ms before being written.
+     * @param directory {@code String} path of the directory to write the files to.
+     * @param baseName {@code String} start of every file name.
+     * @param maxBytes {@code long} size a file can grow to before a new one is started, 0 for no limit.
+     * @param rotateMillis {@code long} time a file is written to before a new one is started, 0 for no limit.
+     * @param maxFiles {@code int} amount of files to keep, 0 to keep all of them.
+     * @param maxQueuedBytes {@code int} bytes of lines that can wait for the file to be written.
+     * @param fullPolicy {@code byte} {@link Logger#ASYNC_BLOCK} to wait for room when that is full, or
+     * {@link Logger#ASYNC_DROP_AND_COUNT} to drop the line. Dropped lines are counted in the file.
+     * @see Logger#startRollingFile(String, String, long, long, int)
+     */
+    public static synchronized void startRollingFile(String directory, String baseName, long maxBytes, long rotateMillis, int maxFiles, int maxQueuedBytes, byte fullPolicy){
+        if (maxQueuedBytes < 1) throw new IllegalArgumentException("Queue size must be at least 1 byte.");
+        if (fullPolicy != ASYNC_BLOCK && fullPolicy != ASYNC_DROP_AND_COUNT) {
+            throw new IllegalArgumentException("Unknown full queue policy: " + fullPolicy);
+        }
+        if (!Files.isDirectory(Path.of(directory))){
+            Logger.log("Rolling file path is not a directory.");
+            return;
+        }
+        stopRollingFile();
+        try {
+            RollingFileAppender appender = new RollingFileAppender(Path.of(directory), baseName, maxBytes, rotateMillis, maxFiles);
+            addShutdownHook();
+            rollingFile = new DecoupledSink(appender, 8192, 200, maxQueuedBytes, fullPolicy == ASYNC_DROP_AND_COUNT, "Logger-Rolling-File");
+        } catch (IOException e) {
+            Logger.log("Failed to create the rolling file.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop writing to the rolling file, writing out anything still buffered.
+     */
+    public static synchronized void stopRollingFile(){
+        Sink file = rollingFile;
+        if (file == null) return;
+        rollingFile = null;
+        // Anything still queued belongs in the file.
+        flushAsync();
+        try {
+            file.close();
+        } catch (IOException e) {
+            Logger.log("Failed to close the rolling file.");
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Compress finished log files with gzip, in the background. This applies to files written by
+     * {@link Logger#logConsole()} and {@link Logger#dumpConsole()}, and to rolling files once a new one has been started.
+     * Each file is replaced by a {@code .gz} file once it has been compressed. Compression runs on a low priority
+     * background thread, never on the thread that logged or dumped. The JVM waits for it before shutting down.
+     * @param compress {@code boolean} true to compress finished files.
+     */
+    public static void setCompressLogFiles(boolean compress){
+        compressLogFiles = compress;
+    }
+
+    /**
+     * Blocks until every file that is waiting to be compressed has been compressed, or the timeout has passed.
+     * @param timeoutMillis {@code long} longest time to wait, in milliseconds.
+     * @return {@code boolean} true if nothing is left to compress.
+     * @see Logger#setCompressLogFiles(boolean)
+     */
+    public static boolean awaitCompression(long timeoutMillis){
+        FileCompressor current;
+        synchronized (Logger.class) {
+            current = compressor;
+        }
+        return current == null || current.await(timeoutMillis);
+    }
+
+    /**
+     * Blocks until every dump started by {@link Logger#logConsoleAsync()} or {@link Logger#dumpConsoleAsync()}
+     * has been written, or the timeout has passed. Called before the JVM shuts down.
+     * @param timeoutMillis {@code long} longest time to wait, in milliseconds.
+     * @return {@code boolean} true if every dump was written in time.
+     */
+    public static boolean awaitDumps(long timeoutMillis){
+        DumpExecutor current;
+        synchronized (Logger.class) {
+            current = dumpExecutor;
+        }
+        return current == null || current.await(timeoutMillis);
+    }
+
+    private static DumpExecutor getDumpExecutor(){
+        synchronized (Logger.class) {
+            if (dumpExecutor == null) dumpExecutor = new DumpExecutor();
+        }
+        addShutdownHook();
+        return dumpExecutor;
+    }
+
+    // Compresses the finished file in the background, if compression is on.
+    private static void finished(Path file){
+        if (!compressLogFiles) return;
+        FileCompressor current;
+        synchronized (Logger.class) {
+            if (compressor == null) compressor = new FileCompressor();
+            current = compressor;
+        }
+        addShutdownHook();
+        current.submit(file);
+    }
+
+
+    //----------------------------------------
+    //----------------------------------------
+    // Metrics
+    //----------------------------------------
+    //----------------------------------------
+    /**
+     * Start counting what the logger does, and register the counters on the platform MBeanServer as
+     * {@code com.github.malthelegend104.logger:type=LoggerMetrics}, so they can be read with JConsole, VisualVM or any
+     * other JMX client. Counting starts at zero every time this is called.
+     * The counters are striped, so logging threads never wait on each other to count.
+     * @see LoggerMetrics
+     */
+    public static synchronized void enableMetrics(){
+        disableMetrics();
+        Metrics created = new Metrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new StandardMBean(created, LoggerMetrics.class, true), Metrics.NAME);
+        } catch (JMException e) {
+            Logger.log("Failed to register the logger metrics.");
+            e.printStackTrace();
+        }
+        metrics = created;
+    }
+
+    /**
+     * Stop counting, and remove the counters from the platform MBeanServer.
+     */
+    public static synchronized void disableMetrics(){
+        if (metrics == null) return;
+        metrics = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(Metrics.NAME)) server.unregisterMBean(Metrics.NAME);
+        } catch (JMException e) {
+            Logger.log("Failed to unregister the logger metrics.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Returns the same counters that are registered over JMX, for reading them from inside the program.
+     * @return {@code LoggerMetrics} the current counters, or null if metrics are disabled.
+     * @see Logger#enableMetrics()
+     */
+    public static LoggerMetrics getMetrics(){
+        return metrics;
+    }
+
+    /**
+     * What the logger has done since {@link Logger#enableMetrics()} was called.
+     * Lines and bytes are counted as they are written to the console, colors included. Lines written by async logging
+     * are counted once the background thread writes them.
+     */
+    public interface LoggerMetrics {
+        /** @return {@code long} lines written by {@link Logger#log}. */
+        long getLogLines();
+        /** @return {@code long} lines written by {@link Logger#info}. */
+        long getInfoLines();
+        /** @return {@code long} lines written by {@link Logger#warn}. */
+        long getWarnLines();
+        /** @return {@code long} lines written by {@link Logger#err}. */
+        long getErrLines();
+        /** @return {@code long} bytes written by {@link Logger#log}. */
+        long getLogBytes();
+        /** @return {@code long} bytes written by {@link Logger#info}. */
+        long getInfoBytes();
+        /** @return {@code long} bytes written by {@link Logger#warn}. */
+        long getWarnBytes();
+        /** @return {@code long} bytes written by {@link Logger#err}. */
+        long getErrBytes();
+        /** @return {@code Map} of every capturing stream to the amount of bytes it currently holds. */
+        Map<String, Long> getCapturedBytes();
+        /** @return {@code long} dump files written by {@link Logger#logConsole()} and {@link Logger#dumpConsole()}. */
+        long getDumpCount();
+        /** @return {@code long} dump files that could not be written. */
+        long getFailedDumpCount();
+        /** @return {@code long} time spent writing dump files, in milliseconds. */
+        long getDumpTotalMillis();
+        /** @return {@code long} longest time a dump file took to write, in milliseconds. */
+        long getDumpMaxMillis();
+        /** @return {@code long[]} upper bound of every bucket in {@link LoggerMetrics#getDumpDurationHistogram()}, in milliseconds. */
+        long[] getDumpDurationBucketsMillis();
+        /** @return {@code long[]} amount of dumps, written or not, that took at most as long as the matching bucket. The last bucket has no upper bound. */
+        long[] getDumpDurationHistogram();
+        /** @return {@code long} messages dropped because the async queue was full, over every time async logging was enabled. */
+        long getDroppedMessages();
+        /** @return {@code long} messages dropped by rate limiting, over every time rate limiting was enabled. */
+        long getSuppressedMessages();
+    }
+
+
+    //----------------------------------------
+    //----------------------------------------
+    // Named Categories
+    //----------------------------------------
+    //----------------------------------------
+    /**
+     * A named category of log messages, created with {@link Logger#named(String)}.
+     * Each category can have its own level. Categories without one use their parent's, all the way up to
+     * {@link Logger#setLevel(byte)}. The level that applies is worked out whenever a level changes, not when logging,
+     * so a disabled call only reads one field.
+     * Lines logged through a category show its name after the time.
+     */
+    public static final class Category {
+        private static final byte INHERIT = -1;
+
+        private final String name;
+        private final Category parent;
+        private final List<Category> children = new CopyOnWriteArrayList<>();
+        private final byte[] prefix;
+        // Set with setLevel, or INHERIT.
+        private byte level;
+        // The level that applies, read by every log call.
+        private volatile byte effectiveLevel;
+
+        private Category(String name, Category parent){
+            this.name = name;
+            this.parent = parent;
+            this.prefix = (parent == null) ? null : ('[' + name + "]\t").getBytes(CONSOLE_CHARSET);
+            this.level = (parent == null) ? LEVEL_LOG : INHERIT;
+            this.effectiveLevel = (parent == null) ? LEVEL_LOG : parent.effectiveLevel;
+            if (parent != null) parent.children.add(this);
+        }
+
+        /**
+         * Get the name of this category.
+         * @return {@code String} the name given to {@link Logger#named(String)}.
+         */
+        public String getName(){
+            return name;
+        }
+
+        /**
+         * Set the lowest level this category, and every category below it without its own level, writes.
+         * @param level {@code byte} lowest level to write, or {@link Logger#LEVEL_OFF} to write nothing.
+         */
+        public void setLevel(byte level){
+            if (level < LEVEL_LOG || level > LEVEL_OFF) throw new IllegalArgumentException("Unknown level: " + level);
+            synchronized (Category.class) {
+                this.level = level;
+                update();
+            }
+        }
+
+        /**
+         * Go back to using the parent's level.
+         */
+        public void clearLevel(){
+            if (parent == null) return;
+            synchronized (Category.class) {
+                this.level = INHERIT;
+                update();
+            }
+        }
+
+        /**
+         * Get the level that applies to this category, whether set on it or inherited.
+         * @return {@code byte} lowest level that is written.
+         */
+        public byte getLevel(){
+            return effectiveLevel;
+        }
+
+        /**
+         * Tells you whether a message of the given level would be written.
+         * @param level {@code byte} level of the message.
+         * @return {@code boolean} true if it would be written.
+         */
+        public boolean isEnabled(byte level){
+            return level >= effectiveLevel;
+        }
+
+        // Works out the level again, and passes it on to every child that inherits it.
+        private void update(){
+            effectiveLevel = (level == INHERIT) ? parent.effectiveLevel : level;
+            for (Category child : children) {
+                if (child.level == INHERIT) child.update();
+            }
+        }
+
+        /**
+         * Log given String under this category.
+         * @param message {@code String} that you want to output to console.
+         */
+        public void log(String message){
+            emit(this, LEVEL_LOG, message);
+        }
+        /**
+         * Log given object under this category. {@link Object#toString()} is only called when the line is written.
+         * @param message {@code Object} that you want to output to console.
+         */
+        public void log(Object message){
+            emitLazy(this, LEVEL_LOG, KIND_OBJECT, null, 0, message, null, null);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code long} that you want to output to console.
+         */
+        public void log(long message){
+            emitNumber(this, LEVEL_LOG, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code double} that you want to output to console.
+         */
+        public void log(double message){
+            emitDecimal(this, LEVEL_LOG, message, KIND_DOUBLE);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code char} that you want to output to console.
+         */
+        public void log(char message){
+            emitNumber(this, LEVEL_LOG, message, KIND_CHAR);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code int} that you want to output to console.
+         */
+        public void log(int message){
+            emitNumber(this, LEVEL_LOG, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code byte} that you want to output to console.
+         */
+        public void log(byte message){
+            emitNumber(this, LEVEL_LOG, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code short} that you want to output to console.
+         */
+        public void log(short message){
+            emitNumber(this, LEVEL_LOG, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code float} that you want to output to console.
+         */
+        public void log(float message){
+            emitDecimal(this, LEVEL_LOG, message, KIND_FLOAT);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code boolean} that you want to output to console.
+         */
+        public void log(boolean message){
+            emitNumber(this, LEVEL_LOG, message ? 1 : 0, KIND_BOOLEAN);
+        }
+        /**
+         * Log a message built from a format under this category.
+         * @param format {@code String} containing {@code {}} where the argument goes.
+         * @param arg {@code Object} that replaces the {@code {}}.
+         * @see Logger#log(String, Object)
+         */
+        public void log(String format, Object arg){
+            emitLazy(this, LEVEL_LOG, KIND_FORMAT, format, 1, arg, null, null);
+        }
+        /**
+         * Log a message built from a format under this category.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param arg1 {@code Object} that replaces the first {@code {}}.
+         * @param arg2 {@code Object} that replaces the second {@code {}}.
+         * @see Logger#log(String, Object, Object)
+         */
+        public void log(String format, Object arg1, Object arg2){
+            emitLazy(this, LEVEL_LOG, KIND_FORMAT, format, 2, arg1, arg2, null);
+        }
+        /**
+         * Log a message built from a format under this category.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+         * @see Logger#log(String, Object...)
+         */
+        public void log(String format, Object... args){
+            emitLazy(this, LEVEL_LOG, KIND_FORMAT, format, -1, null, null, args);
+        }
+        /**
+         * Log the message given by the supplier under this category. The supplier is only called when the line is written.
+         * @param message {@code Supplier} of the message that you want to output to console.
+         */
+        public void logLazy(Supplier<String> message){
+            emitLazy(this, LEVEL_LOG, KIND_SUPPLIER, null, 0, message, null, null);
+        }
+
+        /**
+         * Log given String under this category, using the set info color.
+         * @param message {@code String} that you want to output to console.
+         */
+        public void info(String message){
+            emit(this, LEVEL_INFO, message);
+        }
+        /**
+         * Log given object under this category, using the set info color. {@link Object#toString()} is only called when the line is written.
+         * @param message {@code Object} that you want to output to console.
+         */
+        public void info(Object message){
+            emitLazy(this, LEVEL_INFO, KIND_OBJECT, null, 0, message, null, null);
+        }
+        /**
+         * Log given primitive under this category, using the set info color.
+         * @param message {@code long} that you want to output to console.
+         */
+        public void info(long message){
+            emitNumber(this, LEVEL_INFO, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category, using the set info color.
+         * @param message {@code double} that you want to output to console.
+         */
+        public void info(double message){
+            emitDecimal(this, LEVEL_INFO, message, KIND_DOUBLE);
+        }
+        /**
+         * Log given primitive under this category, using the set info color.
+         * @param message {@code char} that you want to output to console.
+         */
+        public void info(char message){
+            emitNumber(this, LEVEL_INFO, message, KIND_CHAR);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code int} that you want to output to console.
+         */
+        public void info(int message){
+            emitNumber(this, LEVEL_INFO, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code byte} that you want to output to console.
+         */
+        public void info(byte message){
+            emitNumber(this, LEVEL_INFO, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code short} that you want to output to console.
+         */
+        public void info(short message){
+            emitNumber(this, LEVEL_INFO, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code float} that you want to output to console.
+         */
+        public void info(float message){
+            emitDecimal(this, LEVEL_INFO, message, KIND_FLOAT);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code boolean} that you want to output to console.
+         */
+        public void info(boolean message){
+            emitNumber(this, LEVEL_INFO, message ? 1 : 0, KIND_BOOLEAN);
+        }
+        /**
+         * Log a message built from a format under this category, using the set info color.
+         * @param format {@code String} containing {@code {}} where the argument goes.
+         * @param arg {@code Object} that replaces the {@code {}}.
+         * @see Logger#info(String, Object)
+         */
+        public void info(String format, Object arg){
+            emitLazy(this, LEVEL_INFO, KIND_FORMAT, format, 1, arg, null, null);
+        }
+        /**
+         * Log a message built from a format under this category, using the set info color.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param arg1 {@code Object} that replaces the first {@code {}}.
+         * @param arg2 {@code Object} that replaces the second {@code {}}.
+         * @see Logger#info(String, Object, Object)
+         */
+        public void info(String format, Object arg1, Object arg2){
+            emitLazy(this, LEVEL_INFO, KIND_FORMAT, format, 2, arg1, arg2, null);
+        }
+        /**
+         * Log a message built from a format under this category, using the set info color.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+         * @see Logger#info(String, Object...)
+         */
+        public void info(String format, Object... args){
+            emitLazy(this, LEVEL_INFO, KIND_FORMAT, format, -1, null, null, args);
+        }
+        /**
+         * Log the message given by the supplier under this category, using the set info color. The supplier is only called when the line is written.
+         * @param message {@code Supplier} of the message that you want to output to console.
+         */
+        public void infoLazy(Supplier<String> message){
+            emitLazy(this, LEVEL_INFO, KIND_SUPPLIER, null, 0, message, null, null);
+        }
+
+        /**
+         * Log given String under this category, using the set warning color.
+         * @param message {@code String} that you want to output to console.
+         */
+        public void warn(String message){
+            emit(this, LEVEL_WARN, message);
+        }
+        /**
+         * Log given object under this category, using the set warning color. {@link Object#toString()} is only called when the line is written.
+         * @param message {@code Object} that you want to output to console.
+         */
+        public void warn(Object message){
+            emitLazy(this, LEVEL_WARN, KIND_OBJECT, null, 0, message, null, null);
+        }
+        /**
+         * Log given primitive under this category, using the set warning color.
+         * @param message {@code long} that you want to output to console.
+         */
+        public void warn(long message){
+            emitNumber(this, LEVEL_WARN, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category, using the set warning color.
+         * @param message {@code double} that you want to output to console.
+         */
+        public void warn(double message){
+            emitDecimal(this, LEVEL_WARN, message, KIND_DOUBLE);
+        }
+        /**
+         * Log given primitive under this category, using the set warning color.
+         * @param message {@code char} that you want to output to console.
+         */
+        public void warn(char message){
+            emitNumber(this, LEVEL_WARN, message, KIND_CHAR);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code int} that you want to output to console.
+         */
+        public void warn(int message){
+            emitNumber(this, LEVEL_WARN, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code byte} that you want to output to console.
+         */
+        public void warn(byte message){
+            emitNumber(this, LEVEL_WARN, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code short} that you want to output to console.
+         */
+        public void warn(short message){
+            emitNumber(this, LEVEL_WARN, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code float} that you want to output to console.
+         */
+        public void warn(float message){
+            emitDecimal(this, LEVEL_WARN, message, KIND_FLOAT);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code boolean} that you want to output to console.
+         */
+        public void warn(boolean message){
+            emitNumber(this, LEVEL_WARN, message ? 1 : 0, KIND_BOOLEAN);
+        }
+        /**
+         * Log a message built from a format under this category, using the set warning color.
+         * @param format {@code String} containing {@code {}} where the argument goes.
+         * @param arg {@code Object} that replaces the {@code {}}.
+         * @see Logger#warn(String, Object)
+         */
+        public void warn(String format, Object arg){
+            emitLazy(this, LEVEL_WARN, KIND_FORMAT, format, 1, arg, null, null);
+        }
+        /**
+         * Log a message built from a format under this category, using the set warning color.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param arg1 {@code Object} that replaces the first {@code {}}.
+         * @param arg2 {@code Object} that replaces the second {@code {}}.
+         * @see Logger#warn(String, Object, Object)
+         */
+        public void warn(String format, Object arg1, Object arg2){
+            emitLazy(this, LEVEL_WARN, KIND_FORMAT, format, 2, arg1, arg2, null);
+        }
+        /**
+         * Log a message built from a format under this category, using the set warning color.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+         * @see Logger#warn(String, Object...)
+         */
+        public void warn(String format, Object... args){
+            emitLazy(this, LEVEL_WARN, KIND_FORMAT, format, -1, null, null, args);
+        }
+        /**
+         * Log the message given by the supplier under this category, using the set warning color. The supplier is only called when the line is written.
+         * @param message {@code Supplier} of the message that you want to output to console.
+         */
+        public void warnLazy(Supplier<String> message){
+            emitLazy(this, LEVEL_WARN, KIND_SUPPLIER, null, 0, message, null, null);
+        }
+
+        /**
+         * Log given String under this category, using stderr.
+         * @param message {@code String} that you want to output to console.
+         */
+        public void err(String message){
+            emit(this, LEVEL_ERR, message);
+        }
+        /**
+         * Log given object under this category, using stderr. {@link Object#toString()} is only called when the line is written.
+         * @param message {@code Object} that you want to output to console.
+         */
+        public void err(Object message){
+            emitLazy(this, LEVEL_ERR, KIND_OBJECT, null, 0, message, null, null);
+        }
+        /**
+         * Log given primitive under this category, using stderr.
+         * @param message {@code long} that you want to output to console.
+         */
+        public void err(long message){
+            emitNumber(this, LEVEL_ERR, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category, using stderr.
+         * @param message {@code double} that you want to output to console.
+         */
+        public void err(double message){
+            emitDecimal(this, LEVEL_ERR, message, KIND_DOUBLE);
+        }
+        /**
+         * Log given primitive under this category, using stderr.
+         * @param message {@code char} that you want to output to console.
+         */
+        public void err(char message){
+            emitNumber(this, LEVEL_ERR, message, KIND_CHAR);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code int} that you want to output to console.
+         */
+        public void err(int message){
+            emitNumber(this, LEVEL_ERR, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code byte} that you want to output to console.
+         */
+        public void err(byte message){
+            emitNumber(this, LEVEL_ERR, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code short} that you want to output to console.
+         */
+        public void err(short message){
+            emitNumber(this, LEVEL_ERR, message, KIND_INTEGER);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code float} that you want to output to console.
+         */
+        public void err(float message){
+            emitDecimal(this, LEVEL_ERR, message, KIND_FLOAT);
+        }
+        /**
+         * Log given primitive under this category.
+         * @param message {@code boolean} that you want to output to console.
+         */
+        public void err(boolean message){
+            emitNumber(this, LEVEL_ERR, message ? 1 : 0, KIND_BOOLEAN);
+        }
+        /**
+         * Log a message built from a format under this category, using stderr.
+         * @param format {@code String} containing {@code {}} where the argument goes.
+         * @param arg {@code Object} that replaces the {@code {}}.
+         * @see Logger#err(String, Object)
+         */
+        public void err(String format, Object arg){
+            emitLazy(this, LEVEL_ERR, KIND_FORMAT, format, 1, arg, null, null);
+        }
+        /**
+         * Log a message built from a format under this category, using stderr.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param arg1 {@code Object} that replaces the first {@code {}}.
+         * @param arg2 {@code Object} that replaces the second {@code {}}.
+         * @see Logger#err(String, Object, Object)
+         */
+        public void err(String format, Object arg1, Object arg2){
+            emitLazy(this, LEVEL_ERR, KIND_FORMAT, format, 2, arg1, arg2, null);
+        }
+        /**
+         * Log a message built from a format under this category, using stderr.
+         * @param format {@code String} containing {@code {}} where the arguments go.
+         * @param args {@code Object}'s that replace the {@code {}}'s, in order.
+         * @see Logger#err(String, Object...)
+         */
+        public void err(String format, Object... args){
+            emitLazy(this, LEVEL_ERR, KIND_FORMAT, format, -1, null, null, args);
+        }
+        /**
+         * Log the message given by the supplier under this category, using stderr. The supplier is only called when the line is written.
+         * @param message {@code Supplier} of the message that you want to output to console.
+         */
+        public void errLazy(Supplier<String> message){
+            emitLazy(this, LEVEL_ERR, KIND_SUPPLIER, null, 0, message, null, null);
+        }
     }
 
 
@@ -780,6 +2480,14 @@ public class Logger {
     private PrintStreamOutputCapturer errCapturer;
     private String dumpPath;
     private boolean continueCapture;
+    // Block size of the dump index, 0 when dumps aren't indexed. Dumps written on other threads read it once, when they are started.
+    private volatile int indexBlockBytes;
+    private volatile EmergencyDump emergency;
+    // Incremental dumps: the most a file grows to before the next one is started, 0 when dumps aren't incremental.
+    private volatile long incrementalMaxBytes;
+    private String incrementalFile;
+    // The stream the current incremental file ends with, so a section header is only written when the stream changes.
+    private byte incrementalStream;
 
     /**
      * The base constructor for the logger. Defaults to logging {@link System#out} and {@link System#err}; ContinueCapture is set to true.
@@ -886,86 +2594,871 @@ public class Logger {
 
     // Creates the Capturers
     private void createPrintStreamOutputCapturers(){
+        int id = loggerCount.incrementAndGet();
         outputCapturer = new PrintStreamOutputCapturer(out, continueCapture, (byte) 0);
+        capturers.put(outputCapturer, "Logger " + id + " out");
         outputCapturer.start();
         if (bothStreams){
             errCapturer = new PrintStreamOutputCapturer(err, continueCapture, (byte) 1);
+            capturers.put(errCapturer, "Logger " + id + " err");
             errCapturer.start();
         }
     }
 
+    private static void dumpFinished(long started, boolean succeeded){
+        Metrics counters = metrics;
+        if (counters != null) counters.dumpFinished(System.nanoTime() - started, succeeded);
+    }
+
     // Creates the log file with the given name
     private void createLogFile(String fileName){
+        // Anything still queued or batched belongs in the file.
+        flushConsole();
+        long started = System.nanoTime();
         // Verify dumpPath is a dir
         if (Files.isDirectory(Path.of(dumpPath))){
-            File file = new File(dumpPath + fileName);
+            Path file = Path.of(dumpPath + fileName);
+            int blockBytes = indexBlockBytes;
+            boolean indexed = blockBytes > 0;
             try {
-                if (!file.createNewFile()){
-                    Logger.log("File with the same time & date already exist.");
-                    return;
-                }
-                FileWriter writer = new FileWriter(file);
-                writer.write("------Standard Out------\r\n");
-
-                writer.write(
-                        outputCapturer.getBuffer()
-                                .replace(currentNormal, "")
-                                .replace(currentInfo, "")
-                                .replace(currentWarn, "")
-                                .replace(CONSOLE_COLOR_RESET, "")
-                );
-
-                if (bothStreams){
-                    writer.write("\r\n\r\n\r\n------Error Out------\r\n");
-                    writer.write(errCapturer.getBuffer().replace(currentError, "").replace(CONSOLE_COLOR_RESET, ""));
-                }
-                writer.close();
+                writeLogFile(file, snapshot(), false, blockBytes);
+            } catch (FileAlreadyExistsException e) {
+                Logger.log("File with the same time & date already exist.");
+                dumpFinished(started, false);
+                return;
             } catch (IOException e) {
                 Logger.log("Failed to create the file.");
                 e.printStackTrace();
+                dumpFinished(started, false);
+                return;
             }
+            dumpFinished(started, true);
+            // Indexed dumps are read by seeking, which a compressed file can't do.
+            if (!indexed) finished(file);
         } else {
             Logger.log("Dump Path is not a directory.");
         }
     }
 
+    // What every captured stream holds right now: standard out, then error out or null.
+    private DumpSection[] snapshot(){
+        return new DumpSection[]{
+                new DumpSection(outputCapturer, (byte) 0),
+                bothStreams ? new DumpSection(errCapturer, (byte) 1) : null
+        };
+    }
+
+    // Writes the sections to a new file. In parallel, error out is written to a file of its own at the same time
+    // and added to the end once standard out is done. Indexed dumps can't know where it will end up, so never do that.
+    private void writeLogFile(Path file, DumpSection[] sections, boolean parallel, int blockBytes) throws IOException {
+        boolean indexed = blockBytes > 0;
+        boolean json = outputFormat == FORMAT_JSON;
+        // JSON lines have no room for headers, every line says which stream it is from instead.
+        String errHeader = json ? null : "\r\n\r\n\r\n------Error Out------\r\n";
+        DumpSection err = sections[1];
+        Path part = file.resolveSibling(file.getFileName() + ".err.part");
+        ForkJoinTask<Void> errTask = (parallel && err != null && !indexed)
+                ? ForkJoinTask.adapt(() -> err.writeTo(part, errHeader, json)).fork()
+                : null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             DumpIndexWriter index = indexed ? new DumpIndexWriter(DumpReader.indexFile(file), blockBytes) : null) {
+            DumpWriter writer = new DumpWriter(channel, index, json);
+            if (!json) writer.writeText("------Standard Out------\r\n");
+            sections[0].writeTo(writer);
+            if (errTask != null) {
+                writer.finish();
+                DumpSection.join(errTask);
+                try (FileChannel errChannel = FileChannel.open(part, StandardOpenOption.READ)) {
+                    long size = errChannel.size();
+                    for (long done = 0; done < size; ) {
+                        done += errChannel.transferTo(done, size - done, channel);
+                    }
+                }
+            } else if (err != null) {
+                if (errHeader != null) writer.writeText(errHeader);
+                err.writeTo(writer);
+            }
+            writer.finish();
+        } finally {
+            if (errTask != null) {
+                // Opening the file may have failed while the error section was still being written.
+                errTask.quietlyJoin();
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    /**
+     * Log Console to a file without blocking. The capture is only marked where it ends right now, which is cheap;
+     * output captured after this call is left for the next dump. The file is written on a pool of background threads,
+     * with {@link System#out} and {@link System#err} written at the same time. Files that are compressed are compressed
+     * before the future completes.
+     * @return {@code CompletableFuture} of the file that was written, failing with the {@link IOException} if it couldn't be.
+     * @see Logger#logConsole()
+     */
+    public CompletableFuture<Path> logConsoleAsync(){
+        // Anything still queued or batched belongs in the file.
+        flushConsole();
+        DumpSection[] sections = snapshot();
+        if (incrementalMaxBytes > 0) {
+            return getDumpExecutor().submit(() -> {
+                Path file = appendLogFile(sections);
+                if (file == null) throw new IOException("Failed to write the dump.");
+                return file;
+            });
+        }
+        int blockBytes = indexBlockBytes;
+        return getDumpExecutor().submit(() -> writeLogFileAsync(sections, blockBytes));
+    }
+
+    /**
+     * Create a dump file without blocking, used for debugging. Should only be used in the case of a fatal error.
+     * Alerts once the file has been written, from a background thread.
+     * @return {@code CompletableFuture} of the file that was written, failing with the {@link IOException} if it couldn't be.
+     * @see Logger#dumpConsole()
+     * @see Logger#logConsoleAsync()
+     */
+    public CompletableFuture<Path> dumpConsoleAsync(){
+        return logConsoleAsync().thenApply(file -> {
+            alertSink.alert("A fatal error has occurred. You can read the file dump here:\r\n" + file, file);
+            return file;
+        });
+    }
+
+    // Dumps of the same logger are written one at a time, so they never pick the same name.
+    private synchronized Path writeLogFileAsync(DumpSection[] sections, int blockBytes) throws IOException {
+        long started = System.nanoTime();
+        if (!Files.isDirectory(Path.of(dumpPath))){
+            Logger.log("Dump Path is not a directory.");
+            throw new NoSuchFileException(dumpPath, null, "Dump Path is not a directory.");
+        }
+        Path file = Path.of(dumpPath + nextFileName(blockBytes));
+        try {
+            writeLogFile(file, sections, true, blockBytes);
+        } catch (IOException e) {
+            Logger.log("Failed to create the file.");
+            dumpFinished(started, false);
+            throw e;
+        }
+        dumpFinished(started, true);
+        if (compressLogFiles && blockBytes == 0) {
+            FileCompressor.compress(file);
+            Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+            if (Files.exists(compressed)) file = compressed;
+        }
+        return file;
+    }
+
     /**
      * Create a dump file, used for debugging. Should only be used in the case of a fatal error.
      */
     public void dumpConsole(){
+        if (incrementalMaxBytes > 0) {
+            Path file = appendLogFile();
+            if (file != null) alertSink.alert("A fatal error has occurred. You can read the file dump here:\r\n" + file, file);
+            return;
+        }
         if (Files.notExists(Path.of(dumpPath))){
             Logger.log("Cannot create dump. Path is invalid or nonexistent");
         }
-        String fileName = DateTimeFormatter.ofPattern("yyyy_MM_dd HH_mm_ss").format(LocalDateTime.now()) + ".txt";
+        String fileName = nextFileName();
         createLogFile(fileName);
-        errorPane("A fatal error has occurred. You can read the file dump here:\r\n" + dumpPath + fileName);
+        if (compressLogFiles && indexBlockBytes == 0) fileName += ".gz";
+        alertSink.alert("A fatal error has occurred. You can read the file dump here:\r\n" + dumpPath + fileName, Path.of(dumpPath + fileName));
     }
 
     /**
-     * Log Console to a file.
+     * Prepares an emergency dump that writes the capture to a file when a thread dies from an uncaught exception.
+     * @see Logger#enableEmergencyDump(boolean, boolean)
      */
-    public void logConsole(){
-        if (Files.notExists(Path.of(dumpPath))){
-            Logger.log("Cannot create dump. Path is invalid or nonexistent");
+    public void enableEmergencyDump(){
+        enableEmergencyDump(true, false);
+    }
+
+    /**
+     * Prepares a dump that can still be written when the JVM is out of memory. The file is created and opened now,
+     * and its name and every buffer used to write it are made ahead of time, so
+     * {@link Logger#emergencyDump()} writes the capture without allocating anything on the heap.
+     * {@link Logger#dumpConsole()} keeps making a new file, so the prepared one is still there for the crash.
+     * <p>
+     * The dump can only be written once, and is written to {@code emergency yyyy_MM_dd HH_mm_ss.txt} in the dump path,
+     * named after when it was prepared. If the JVM exits without it being written, the file is deleted.
+     * @param onUncaughtException {@code boolean} true to write the dump when any thread dies from an uncaught exception,
+     * after the previous default handler, or the stack trace, has been printed.
+     * @param onShutdown {@code boolean} true to write the dump when the JVM shuts down, if it hasn't been written yet.
+     */
+    public synchronized void enableEmergencyDump(boolean onUncaughtException, boolean onShutdown){
+        disableEmergencyDump();
+        if (!Files.isDirectory(Path.of(dumpPath))){
+            Logger.log("Dump Path is not a directory.");
+            return;
+        }
+        String extension = (outputFormat == FORMAT_JSON) ? ".jsonl" : ".txt";
+        Path file = Path.of(dumpPath + "emergency " + DateTimeFormatter.ofPattern("yyyy_MM_dd HH_mm_ss").format(LocalDateTime.now()) + extension);
+        try {
+            emergency = new EmergencyDump(this, file, onUncaughtException, onShutdown);
+        } catch (IOException e) {
+            Logger.log("Failed to create the emergency dump file.");
+            e.printStackTrace();
         }
-        String fileName = DateTimeFormatter.ofPattern("yyyy_MM_dd HH_mm_ss").format(LocalDateTime.now()) + ".txt";
-        createLogFile(fileName);
     }
 
     /**
-     * Stops the capture for any streams that are being captured.
+     * Removes the prepared emergency dump, deleting its file if it hasn't been written.
      */
-    public void stopCapture(){
-        outputCapturer.stop();
-        if (bothStreams) errCapturer.stop();
+    public synchronized void disableEmergencyDump(){
+        EmergencyDump prepared = emergency;
+        if (prepared == null) return;
+        emergency = null;
+        prepared.close();
     }
 
     /**
-     * Starts the capture for any streams that are being captured.
+     * Writes the prepared emergency dump, without allocating anything on the heap.
+     * Lines waiting in the console batch are written first; lines still queued for async logging are not waited for.
+     * @return {@code boolean} true if the dump was written, false if none is prepared, it was already written, or it failed.
+     * @see Logger#enableEmergencyDump(boolean, boolean)
      */
-    public void startCapture(){
-        outputCapturer.start();
-        if (bothStreams) errCapturer.start();
+    public boolean emergencyDump(){
+        EmergencyDump prepared = emergency;
+        return prepared != null && prepared.write();
+    }
+
+    /**
+     * Log Console to a file.
+     */
+    public void logConsole(){
+        if (incrementalMaxBytes > 0) {
+            appendLogFile();
+            return;
+        }
+        if (Files.notExists(Path.of(dumpPath))){
+            Logger.log("Cannot create dump. Path is invalid or nonexistent");
+        }
+        createLogFile(nextFileName());
+    }
+
+    // Appends what was captured since the last incremental dump to the current file, returns the file or null if that failed.
+    private Path appendLogFile(){
+        // Anything still queued or batched belongs in the file.
+        flushConsole();
+        return appendLogFile(snapshot());
+    }
+
+    // Only up to where the sections end, what was captured after they were taken is left for the next dump.
+    private synchronized Path appendLogFile(DumpSection[] sections){
+        long started = System.nanoTime();
+        if (!Files.isDirectory(Path.of(dumpPath))){
+            Logger.log("Dump Path is not a directory.");
+            return null;
+        }
+        int blockBytes = indexBlockBytes;
+        if (incrementalFile == null) incrementalFile = nextFileName(blockBytes);
+        Path file = Path.of(dumpPath + incrementalFile);
+        boolean indexed = blockBytes > 0;
+        boolean json = outputFormat == FORMAT_JSON;
+        long size;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             DumpIndexWriter index = indexed ? new DumpIndexWriter(DumpReader.indexFile(file), blockBytes, true) : null) {
+            DumpWriter writer = new DumpWriter(channel, index, json);
+            writer.startAt(channel.size());
+            // A new file has no section yet.
+            byte last = (channel.size() == 0) ? -1 : incrementalStream;
+            last = appendCapture(writer, outputCapturer, sections[0], last, json ? null : "------Standard Out------\r\n");
+            if (bothStreams) last = appendCapture(writer, errCapturer, sections[1], last, json ? null : "------Error Out------\r\n");
+            incrementalStream = last;
+            writer.finish();
+            size = channel.size();
+        } catch (IOException e) {
+            Logger.log("Failed to write to the file.");
+            e.printStackTrace();
+            dumpFinished(started, false);
+            return null;
+        }
+        dumpFinished(started, true);
+        if (size >= incrementalMaxBytes) {
+            // Full, the next dump starts a new file.
+            incrementalFile = null;
+            if (!indexed) finished(file);
+        }
+        return file;
+    }
+
+    // Only whole lines are written, a line that is still being written is left for the next dump.
+    // The header is left out when the file already ends with this stream. Returns the stream the file now ends with.
+    private static byte appendCapture(DumpWriter writer, PrintStreamOutputCapturer capturer, DumpSection section, byte last, String header) throws IOException {
+        CaptureBuffer buffer = capturer.getCaptureBuffer();
+        byte stream = section.stream;
+        // A buffer that was replaced since counts from somewhere else, its end means nothing in the new one.
+        long end = (section.buffer == buffer) ? section.end : buffer.end();
+        long from = Math.max(capturer.dumped, buffer.start());
+        long to = buffer.lastLineEnd(from, end);
+        if (to <= from) return last;
+        if (header != null && stream != last) writer.writeText((writer.written > 0) ? "\r\n" + header : header);
+        writer.writeStripped(buffer, capturer.getTimeMarks(), stream, from, to);
+        capturer.dumped = to;
+        return stream;
+    }
+
+    // Named after the current second, or the next segment of the store when dumps are indexed.
+    private String nextFileName(){
+        return nextFileName(indexBlockBytes);
+    }
+
+    private String nextFileName(int blockBytes){
+        if (blockBytes == 0) {
+            String extension = (outputFormat == FORMAT_JSON) ? ".jsonl" : ".txt";
+            return DateTimeFormatter.ofPattern("yyyy_MM_dd HH_mm_ss").format(LocalDateTime.now()) + extension;
+        }
+        int highest = 0;
+        try {
+            for (Path segment : DumpReader.segments(Path.of(dumpPath))) {
+                highest = Math.max(highest, DumpReader.sequenceOf(segment.getFileName().toString()));
+            }
+        } catch (IOException e) {
+            // Creating the file will fail and report it.
+        }
+        return String.format("dump-%06d.log", highest + 1);
+    }
+
+    /**
+     * Write dumps to an indexed store instead of one file per second, indexing every 16 KB.
+     * @see Logger#enableIndexedDumps(int)
+     */
+    public void enableIndexedDumps(){
+        enableIndexedDumps(16 * 1024);
+    }
+
+    /**
+     * Write dumps to an indexed store instead of one file per second. {@link Logger#logConsole()} and
+     * {@link Logger#dumpConsole()} then write {@code dump-000001.log}, {@code dump-000002.log} and so on, each with a
+     * {@code .idx} file next to it. The index holds where every block of about {@code blockBytes} starts, when its lines
+     * were captured, and the level of each line, so {@link DumpReader} can go straight to a time window or a level
+     * without reading the rest of the file.
+     * Capture times are only recorded from now on; output captured before this was called gets the current time.
+     * Lines without a level of their own, like stack traces, get the level of the line before them.
+     * Indexed dumps are never compressed.
+     * @param blockBytes {@code int} amount of bytes between index entries, at least 1024.
+     */
+    public void enableIndexedDumps(int blockBytes){
+        if (blockBytes < 1024) throw new IllegalArgumentException("Block size must be at least 1024 bytes.");
+        indexBlockBytes = blockBytes;
+        outputCapturer.recordTimes(true);
+        if (bothStreams) errCapturer.recordTimes(true);
+    }
+
+    /**
+     * Go back to writing one plain file per dump.
+     */
+    public void disableIndexedDumps(){
+        indexBlockBytes = 0;
+        outputCapturer.recordTimes(false);
+        if (bothStreams) errCapturer.recordTimes(false);
+    }
+
+    /**
+     * Make every dump add to one file that keeps growing.
+     * @see Logger#enableIncrementalDumps(long)
+     */
+    public void enableIncrementalDumps(){
+        enableIncrementalDumps(Long.MAX_VALUE);
+    }
+
+    /**
+     * Make {@link Logger#logConsole()} and {@link Logger#dumpConsole()} add only what was captured since the last dump
+     * to the end of the current file, instead of writing everything that is captured to a new file. Each call then only
+     * costs as much as the new output, so it can be called every few seconds as a checkpoint.
+     * Only whole lines are written, a line that hasn't been finished yet is left for the next dump.
+     * The first dump writes everything that is captured. A section header is only written when a file is started,
+     * or when the file goes from one stream to the other.
+     * <p>
+     * With {@link Logger#enableIndexedDumps()}, dumps are added to the current segment and its index.
+     * Once a file is at least {@code maxFileBytes}, the next dump starts a new one.
+     * @param maxFileBytes {@code long} size at which a new file is started.
+     */
+    public synchronized void enableIncrementalDumps(long maxFileBytes){
+        if (maxFileBytes < 1) throw new IllegalArgumentException("Max file size must be at least 1 byte.");
+        incrementalMaxBytes = maxFileBytes;
+    }
+
+    /**
+     * Go back to writing everything that is captured to a new file for every dump.
+     * The next incremental dump, if they are enabled again, starts a new file.
+     */
+    public synchronized void disableIncrementalDumps(){
+        incrementalMaxBytes = 0;
+        incrementalFile = null;
+    }
+
+    /**
+     * Only keep the most recent output. Once the limit is reached, the oldest output is thrown away as new output comes in,
+     * so {@link Logger#logConsole()} and {@link Logger#dumpConsole()} only contain the most recent window.
+     * Memory use stays the same no matter how long the program runs. Each captured stream gets its own limit.
+     * @param maxBytes {@code int} amount of bytes to keep for each captured stream.
+     */
+    public void setCaptureLimit(int maxBytes){
+        setCaptureLimit(maxBytes, 0);
+    }
+
+    /**
+     * Only keep the most recent output, limited by both bytes and lines.
+     * @param maxBytes {@code int} amount of bytes to keep for each captured stream.
+     * @param maxLines {@code int} amount of lines to keep for each captured stream, 0 for no line limit.
+     * @see Logger#setCaptureLimit(int)
+     */
+    public void setCaptureLimit(int maxBytes, int maxLines){
+        outputCapturer.setBuffer(new RingCaptureBuffer(maxBytes, maxLines));
+        if (bothStreams) errCapturer.setBuffer(new RingCaptureBuffer(maxBytes, maxLines));
+    }
+
+    /**
+     * Keep all captured output, but once more than {@code heapBytes} have been captured, move it into memory-mapped files
+     * in the given directory. Segment files are 64 MB each.
+     * They are deleted once the capture stops using them, and when the JVM shuts down.
+     * If the JVM crashes, the files are left behind and can be read with {@link Logger#recoverSpilledCapture(String, String)}.
+     * @param spillPath {@code String} path of the directory to put the segment files in.
+     * @param heapBytes {@code int} amount of bytes kept on the heap before moving to files.
+     */
+    public void setCaptureSpill(String spillPath, int heapBytes){
+        setCaptureSpill(spillPath, heapBytes, 64 * 1024 * 1024);
+    }
+
+    /**
+     * Keep all captured output, moving it into memory-mapped files past {@code heapBytes}.
+     * @param spillPath {@code String} path of the directory to put the segment files in.
+     * @param heapBytes {@code int} amount of bytes kept on the heap before moving to files.
+     * @param segmentBytes {@code int} size of each segment file.
+     * @see Logger#setCaptureSpill(String, int)
+     */
+    public void setCaptureSpill(String spillPath, int heapBytes, int segmentBytes){
+        if (!Files.isDirectory(Path.of(spillPath))){
+            Logger.log("Spill Path is not a directory.");
+            return;
+        }
+        outputCapturer.setBuffer(new SpillCaptureBuffer(Path.of(spillPath), heapBytes, segmentBytes));
+        if (bothStreams) errCapturer.setBuffer(new SpillCaptureBuffer(Path.of(spillPath), heapBytes, segmentBytes));
+    }
+
+    /**
+     * Reads segment files left behind by {@link Logger#setCaptureSpill(String, int)} after a crash.
+     * Each captured stream is written to its own {@code capture-<pid>-<n>.txt} file, still containing the console colors.
+     * The segment files are left in place.
+     * @param spillPath {@code String} path of the directory containing the segment files.
+     * @param dumpPath {@code String} path of the directory to write the recovered files to.
+     */
+    public static void recoverSpilledCapture(String spillPath, String dumpPath){
+        if (!Files.isDirectory(Path.of(spillPath)) || !Files.isDirectory(Path.of(dumpPath))){
+            Logger.log("Spill Path or Dump Path is not a directory.");
+            return;
+        }
+        try {
+            for (Path file : SpillCaptureBuffer.recover(Path.of(spillPath), Path.of(dumpPath))) {
+                Logger.log("Recovered capture to " + file);
+            }
+        } catch (IOException e) {
+            Logger.log("Failed to recover the capture.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Go back to keeping all captured output, starting with what is currently kept.
+     * @see Logger#setCaptureLimit(int)
+     */
+    public void removeCaptureLimit(){
+        outputCapturer.setBuffer(new HeapCaptureBuffer());
+        if (bothStreams) errCapturer.setBuffer(new HeapCaptureBuffer());
+    }
+
+    /**
+     * Stops the capture for any streams that are being captured.
+     */
+    public void stopCapture(){
+        outputCapturer.stop();
+        if (bothStreams) errCapturer.stop();
+    }
+
+    /**
+     * Starts the capture for any streams that are being captured.
+     */
+    public void startCapture(){
+        outputCapturer.start();
+        if (bothStreams) errCapturer.start();
+    }
+
+    /**
+     * Only capture what the current thread writes, until the returned scope is closed. Threads started by the current
+     * thread while the scope is open are captured too, virtual threads included. Output from every other thread is
+     * passed straight through without being copied.
+     * This stops capturing every thread; use {@link Logger#startCapture()} to go back to that once the scope is closed.
+     * Lines written with async logging enabled are written by the background thread, so they aren't part of the scope.
+     * <pre>{@code
+     * try (Logger.CaptureScope scope = jobLogger.captureScope()) {
+     *     runJob();
+     * }
+     * jobLogger.logConsole();
+     * }</pre>
+     * @return {@code CaptureScope} the open scope, close it to stop capturing.
+     */
+    public CaptureScope captureScope(){
+        stopCapture();
+        return new CaptureScope(outputCapturer, bothStreams ? errCapturer : null);
+    }
+
+    /**
+     * Output of one thread, and the threads it starts, being captured by a {@link Logger}.
+     * Created with {@link Logger#captureScope()}. Scopes can be nested; output then goes to every open scope of the thread.
+     */
+    public static final class CaptureScope implements AutoCloseable {
+        private static final InheritableThreadLocal<CaptureScope> current = new InheritableThreadLocal<>();
+
+        private final CaptureScope parent;
+        private final OutputStream out;
+        private final OutputStream err;
+        private volatile boolean closed;
+
+        private CaptureScope(PrintStreamOutputCapturer outCapturer, PrintStreamOutputCapturer errCapturer){
+            this.parent = current.get();
+            this.out = outCapturer.target;
+            this.err = (errCapturer == null) ? null : errCapturer.target;
+            OutputStreamCombiner.forStream((byte) 0).attach(outCapturer.previous);
+            if (errCapturer != null) OutputStreamCombiner.forStream((byte) 1).attach(errCapturer.previous);
+            current.set(this);
+        }
+
+        // Writes to every open scope of the current thread.
+        private static void write(byte type, byte[] b, int off, int len) throws IOException {
+            for (CaptureScope scope = current.get(); scope != null; scope = scope.parent) {
+                if (scope.closed) continue;
+                OutputStream target = (type == 0) ? scope.out : scope.err;
+                if (target != null) target.write(b, off, len);
+            }
+        }
+
+        /**
+         * Runs the task inside this scope, on whatever thread it ends up on. Use this for tasks handed to an executor,
+         * whose threads were not started inside the scope.
+         * @param task {@code Runnable} to run inside this scope.
+         * @return {@code Runnable} running the task inside this scope.
+         */
+        public Runnable wrap(Runnable task){
+            return () -> {
+                CaptureScope previous = current.get();
+                current.set(this);
+                try {
+                    task.run();
+                } finally {
+                    current.set(previous);
+                }
+            };
+        }
+
+        /**
+         * Stops capturing. Threads that were started inside the scope stop being captured as well.
+         */
+        public void close(){
+            if (closed) return;
+            closed = true;
+            if (current.get() == this) current.set(parent);
+            OutputStreamCombiner.forStream((byte) 0).detach();
+            if (err != null) OutputStreamCombiner.forStream((byte) 1).detach();
+        }
+    }
+
+    /**
+     * Reads dumps written with {@link Logger#enableIndexedDumps()}. Only the index is read up front; reading a time
+     * window or level only reads the blocks that can contain matching lines.
+     * <pre>{@code
+     * for (Path segment : Logger.DumpReader.segments(Path.of("logs"))) {
+     *     try (Logger.DumpReader reader = Logger.DumpReader.open(segment)) {
+     *         reader.read(from, to, Logger.LEVEL_WARN, line -> System.out.println(line.getText()));
+     *     }
+     * }
+     * }</pre>
+     */
+    public static final class DumpReader implements Closeable {
+        private static final int MAGIC = 0x4C474958; // "LGIX"
+        private static final int VERSION = 1;
+        // Most bytes mapped and scanned by one task of search().
+        private static final int SEARCH_CHUNK_BYTES = 4 * 1024 * 1024;
+
+        private final FileChannel channel;
+        private final List<Block> blocks;
+
+        private DumpReader(FileChannel channel, List<Block> blocks){
+            this.channel = channel;
+            this.blocks = blocks;
+        }
+
+        /**
+         * Opens a dump and reads its index.
+         * @param file {@code Path} of the dump, the {@code .log} file.
+         * @return {@code DumpReader} for the dump.
+         * @throws IOException if either file can't be read, or the index isn't an index.
+         */
+        public static DumpReader open(Path file) throws IOException {
+            List<Block> blocks = new ArrayList<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile(file))))) {
+                if (in.readInt() != MAGIC) throw new IOException("Not a dump index: " + indexFile(file));
+                int version = in.readInt();
+                if (version != VERSION) throw new IOException("Unknown dump index version: " + version);
+                in.readInt();
+                in.readInt();
+                while (true) {
+                    long offset;
+                    try {
+                        offset = in.readLong();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    blocks.add(Block.read(offset, in));
+                }
+            }
+            return new DumpReader(FileChannel.open(file, StandardOpenOption.READ), blocks);
+        }
+
+        /**
+         * Lists the dumps in a directory, oldest first.
+         * @param directory {@code Path} of the dump directory.
+         * @return {@code List} of every {@code dump-NNNNNN.log} file that has an index.
+         * @throws IOException if the directory can't be read.
+         */
+        public static List<Path> segments(Path directory) throws IOException {
+            List<Path> segments = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "dump-*.log")) {
+                for (Path file : files) {
+                    if (sequenceOf(file.getFileName().toString()) > 0 && Files.exists(indexFile(file))) segments.add(file);
+                }
+            }
+            segments.sort(null);
+            return segments;
+        }
+
+        private static int sequenceOf(String name){
+            if (name.length() != 15 || !name.startsWith("dump-") || !name.endsWith(".log")) return -1;
+            try {
+                return Integer.parseInt(name.substring(5, 11));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static Path indexFile(Path file){
+            String name = file.getFileName().toString();
+            if (name.endsWith(".log")) name = name.substring(0, name.length() - 4);
+            return file.resolveSibling(name + ".idx");
+        }
+
+        /**
+         * Returns the time of the first line in the dump.
+         * @return {@code long} milliseconds since the epoch, 0 if the dump is empty.
+         */
+        public long getStartTime(){
+            long start = Long.MAX_VALUE;
+            for (Block block : blocks) start = Math.min(start, block.firstTime());
+            return blocks.isEmpty() ? 0 : start;
+        }
+
+        /**
+         * Returns the time of the last line in the dump.
+         * @return {@code long} milliseconds since the epoch, 0 if the dump is empty.
+         */
+        public long getEndTime(){
+            long end = 0;
+            for (Block block : blocks) end = Math.max(end, block.lastTime());
+            return end;
+        }
+
+        /**
+         * Reads every line captured between {@code fromMillis} and {@code toMillis} (both included) with at least the
+         * given level, standard out first, then error out.
+         * @param fromMillis {@code long} milliseconds since the epoch, {@link Long#MIN_VALUE} for no lower bound.
+         * @param toMillis {@code long} milliseconds since the epoch, {@link Long#MAX_VALUE} for no upper bound.
+         * @param minLevel {@code byte} lowest level to read, {@link Logger#LEVEL_LOG} for every line.
+         * @param action {@code Consumer} called with every matching line, in order.
+         * @throws IOException if the dump can't be read.
+         */
+        public void read(long fromMillis, long toMillis, byte minLevel, Consumer<DumpLine> action) throws IOException {
+            for (Block block : blocks) {
+                if (!block.mayMatch(fromMillis, toMillis, minLevel)) continue;
+                ByteBuffer bytes = ByteBuffer.allocate(block.length);
+                while (bytes.hasRemaining()) {
+                    if (channel.read(bytes, block.offset + bytes.position()) < 0) throw new EOFException("Dump is shorter than its index.");
+                }
+                block.scan(bytes, 0, fromMillis, toMillis, minLevel, null, action);
+            }
+        }
+
+        /**
+         * Like {@link DumpReader#read(long, long, byte, Consumer)}, but only lines that also contain a match for
+         * {@code pattern}, and made for large dumps: the blocks that can match are memory-mapped in chunks of a few MB
+         * and scanned in parallel on the common {@link java.util.concurrent.ForkJoinPool}. Only a few chunks per thread of
+         * the pool are mapped and scanned ahead at a time, so memory stays bounded however large the dump is.
+         * Lines are still passed to {@code action} in order, on the calling thread, as soon as every chunk before them is done.
+         * @param fromMillis {@code long} milliseconds since the epoch, {@link Long#MIN_VALUE} for no lower bound.
+         * @param toMillis {@code long} milliseconds since the epoch, {@link Long#MAX_VALUE} for no upper bound.
+         * @param minLevel {@code byte} lowest level to read, {@link Logger#LEVEL_LOG} for every line.
+         * @param pattern {@code Pattern} lines have to contain a match for, null to not filter on text.
+         * @param action {@code Consumer} called with every matching line, in order.
+         * @throws IOException if the dump can't be read.
+         */
+        public void search(long fromMillis, long toMillis, byte minLevel, Pattern pattern, Consumer<DumpLine> action) throws IOException {
+            int window = 2 * ForkJoinPool.getCommonPoolParallelism();
+            ArrayDeque<ForkJoinTask<List<DumpLine>>> tasks = new ArrayDeque<>();
+            List<Block> chunk = new ArrayList<>();
+            for (Block block : blocks) {
+                if (!block.mayMatch(fromMillis, toMillis, minLevel)) continue;
+                if (!chunk.isEmpty()) {
+                    Block first = chunk.get(0);
+                    if (block.offset + block.length - first.offset > SEARCH_CHUNK_BYTES) {
+                        // Passes on the oldest chunk before starting another one past the window.
+                        if (tasks.size() >= window) tasks.poll().join().forEach(action);
+                        tasks.add(searchChunk(chunk, fromMillis, toMillis, minLevel, pattern));
+                        chunk = new ArrayList<>();
+                    }
+                }
+                chunk.add(block);
+            }
+            if (!chunk.isEmpty()) tasks.add(searchChunk(chunk, fromMillis, toMillis, minLevel, pattern));
+            while (!tasks.isEmpty()) tasks.poll().join().forEach(action);
+        }
+
+        // Maps the blocks, from the start of the first to the end of the last, and starts scanning them.
+        private ForkJoinTask<List<DumpLine>> searchChunk(List<Block> chunk, long fromMillis, long toMillis, byte minLevel, Pattern pattern) throws IOException {
+            Block first = chunk.get(0);
+            Block last = chunk.get(chunk.size() - 1);
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, first.offset, last.offset + last.length - first.offset);
+            return ForkJoinTask.adapt(() -> {
+                List<DumpLine> lines = new ArrayList<>();
+                for (Block block : chunk) {
+                    block.scan(mapped, (int) (block.offset - first.offset), fromMillis, toMillis, minLevel, pattern, lines::add);
+                }
+                return lines;
+            }).fork();
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        // One entry of the index, see DumpIndexWriter for the layout.
+        private static class Block {
+            private long offset;
+            private int length;
+            private byte stream;
+            private int levelMask;
+            private byte[] levels;
+            private int[] changeLines;
+            private long[] changeTimes;
+
+            private static Block read(long offset, DataInputStream in) throws IOException {
+                Block block = new Block();
+                block.offset = offset;
+                block.length = in.readInt();
+                block.stream = in.readByte();
+                block.levelMask = in.readByte() & 0xFF;
+                block.levels = new byte[in.readInt()];
+                in.readFully(block.levels);
+                int changes = in.readInt();
+                block.changeLines = new int[changes];
+                block.changeTimes = new long[changes];
+                for (int i = 0; i < changes; i++) {
+                    block.changeLines[i] = in.readInt();
+                    block.changeTimes[i] = in.readLong();
+                }
+                return block;
+            }
+
+            private long firstTime(){
+                return changeTimes[0];
+            }
+
+            // False if no line in the block can be in the window with at least the level.
+            private boolean mayMatch(long fromMillis, long toMillis, byte minLevel){
+                // Every level from minLevel up.
+                int wanted = ~((1 << minLevel) - 1);
+                return (levelMask & wanted) != 0 && lastTime() >= fromMillis && firstTime() <= toMillis;
+            }
+
+            // Passes every matching line to action. The block starts at index start of bytes.
+            private void scan(ByteBuffer bytes, int start, long fromMillis, long toMillis, byte minLevel, Pattern pattern, Consumer<DumpLine> action){
+                int end = start + length;
+                int lineStart = start;
+                int change = 0;
+                byte[] text = new byte[256];
+                for (int line = 0; line < levels.length; line++) {
+                    int lineEnd = lineStart;
+                    while (lineEnd < end && bytes.get(lineEnd) != '\n') lineEnd++;
+                    while (change + 1 < changeLines.length && changeLines[change + 1] <= line) change++;
+                    long time = changeTimes[change];
+                    byte level = levels[line];
+                    if (level >= minLevel && time >= fromMillis && time <= toMillis) {
+                        int textEnd = (lineEnd > lineStart && bytes.get(lineEnd - 1) == '\r') ? lineEnd - 1 : lineEnd;
+                        int textLength = textEnd - lineStart;
+                        if (textLength > text.length) text = new byte[Math.max(textLength, text.length * 2)];
+                        bytes.get(lineStart, text, 0, textLength);
+                        String decoded = new String(text, 0, textLength, CONSOLE_CHARSET);
+                        if (pattern == null || pattern.matcher(decoded).find()) {
+                            action.accept(new DumpLine(time, level, stream, decoded));
+                        }
+                    }
+                    lineStart = lineEnd + 1;
+                }
+            }
+
+            private long lastTime(){
+                return changeTimes[changeTimes.length - 1];
+            }
+        }
+    }
+
+    /**
+     * One line of an indexed dump, read with {@link DumpReader}.
+     */
+    public static final class DumpLine {
+        private final long time;
+        private final byte level;
+        private final byte stream;
+        private final String text;
+
+        private DumpLine(long time, byte level, byte stream, String text){
+            this.time = time;
+            this.level = level;
+            this.stream = stream;
+            this.text = text;
+        }
+
+        /**
+         * @return {@code long} when the line was captured, in milliseconds since the epoch. Accurate to about 100 ms.
+         */
+        public long getTime(){
+            return time;
+        }
+
+        /**
+         * @return {@code byte} level of the line, see {@link Logger#LEVEL_LOG} and the other levels.
+         */
+        public byte getLevel(){
+            return level;
+        }
+
+        /**
+         * @return {@code boolean} true if the line was written to the error stream.
+         */
+        public boolean isError(){
+            return stream == 1;
+        }
+
+        /**
+         * @return {@code String} the line, without colors or the line separator.
+         */
+        public String getText(){
+            return text;
+        }
+
+        public String toString(){
+            return text;
+        }
     }
 
 
@@ -975,20 +3468,82 @@ public class Logger {
     //----------------------------------------
     //----------------------------------------
     /**
-     * Creates a capturer that allows it to print to two output streams at once.
-     * This mainly interfaces with {@link OutputStreamCombiner}.
+     * Everything to do with Swing. Nothing in here, and so nothing from Swing or AWT, is loaded until a pane is shown.
+     * Without a display, panes are logged instead.
+     */
+    private static class Panes {
+        private static final int PLAIN = JOptionPane.PLAIN_MESSAGE;
+        private static final int ERROR = JOptionPane.ERROR_MESSAGE;
+        private static final JFrame parent = createParent();
+
+        private static JFrame createParent(){
+            if (GraphicsEnvironment.isHeadless()) return null;
+            JFrame frame = new JFrame();
+            frame.setAlwaysOnTop(true);
+            return frame;
+        }
+
+        // A null title shows the default message pane.
+        public static void show(String message, String title, int type){
+            if (parent == null) {
+                String line = (title == null) ? message : title + ": " + message;
+                if (type == ERROR) Logger.err(line);
+                else Logger.log(line);
+                return;
+            }
+            if (title == null) JOptionPane.showMessageDialog(parent, message);
+            else JOptionPane.showMessageDialog(parent, message, title, type);
+        }
+    }
+
+    /**
+     * Captures everything written to {@link System#out} or {@link System#err} into a {@link CaptureBuffer}.
+     * Capturing only subscribes to the {@link OutputStreamCombiner} of the stream, so any amount of capturers
+     * can start and stop in any order.
      */
     private static class PrintStreamOutputCapturer {
-        private ByteArrayOutputStream baos;
-        private PrintStream previous;
+        // How much console output can wait for the capture thread before writers wait for it.
+        private static final int QUEUED_BYTES = 256 * 1024;
+        private volatile CaptureBuffer buffer;
+        private volatile TimeMarks marks;
+        // Position up to which incremental dumps have written the buffer.
+        private long dumped;
+        private final PrintStream previous;
         private boolean capturing;
         private boolean continueCapture;
         private final byte type;
+        // Copies into the target on its own thread while capturing.
+        private DecoupledSink sink;
+        // Held while writing and while the buffer is swapped, so nothing is written into a buffer that was already replaced.
+        private final Object writeLock = new Object();
+        // Always writes into whatever the current buffer is, so the buffer can be swapped while capturing.
+        private final OutputStream target = new OutputStream() {
+            public void write(int b) throws IOException {
+                synchronized (writeLock) {
+                    TimeMarks current = marks;
+                    if (current != null) current.record(buffer);
+                    buffer.write(b);
+                }
+            }
+
+            public void write(byte[] b, int off, int len) throws IOException {
+                synchronized (writeLock) {
+                    TimeMarks current = marks;
+                    if (current != null) current.record(buffer);
+                    buffer.write(b, off, len);
+                    CaptureBuffer fallback = buffer.fallback();
+                    if (fallback != null) {
+                        setBuffer(fallback);
+                        buffer.write(b, off, len);
+                    }
+                }
+            }
+        };
 
         public PrintStreamOutputCapturer(PrintStream printStream, boolean continueCapture, byte type){
             this.previous = printStream;
             this.continueCapture = continueCapture;
-            this.baos = new ByteArrayOutputStream();
+            this.buffer = new HeapCaptureBuffer();
             this.type = type;
         }
 
@@ -1000,28 +3555,30 @@ public class Logger {
 
             capturing = true;
             if (!continueCapture){
-                baos = new ByteArrayOutputStream();
+                clear();
             }
 
-            OutputStream outputStreamCombiner = new OutputStreamCombiner(Arrays.asList(previous, baos));
-            PrintStream custom = new PrintStream(outputStreamCombiner);
-
-            if (type == 0) System.setOut(custom);
-            if (type == 1) System.setErr(custom);
+            sink = new DecoupledSink(target, 0, 0, QUEUED_BYTES, false, (type == 0) ? "Logger-Capture-Out" : "Logger-Capture-Err");
+            OutputStreamCombiner.forStream(type).subscribe(previous, sink);
         }
 
         public void stop() {
             if (!capturing) {
                 return;
             }
-            if (type == 0) System.setOut(previous);
-            if (type == 1) System.setErr(previous);
+            OutputStreamCombiner.forStream(type).unsubscribe(sink);
+            try {
+                // Copies in what is still queued.
+                sink.close();
+            } catch (IOException e) {
+                // The target is kept in memory, and doesn't throw.
+            }
+            sink = null;
 
             if (!continueCapture){
-                baos = null;
+                clear();
             }
 
-            previous = null;
             capturing = false;
         }
 
@@ -1033,36 +3590,2985 @@ public class Logger {
             return capturing;
         }
 
-        public String getBuffer(){
-            return baos.toString();
+        // Replaces the buffer, keeping as much of what was already captured as the new buffer holds.
+        public void setBuffer(CaptureBuffer replacement){
+            synchronized (writeLock) {
+                long shift = buffer.start();
+                replacement.copyFrom(buffer);
+                replaceBuffer(replacement);
+                // The new buffer starts counting positions from what was the oldest byte.
+                TimeMarks current = marks;
+                if (current != null) current.shift(shift);
+                dumped = Math.max(0, dumped - shift);
+            }
+        }
+
+        private void clear(){
+            synchronized (writeLock) {
+                replaceBuffer(buffer.emptyCopy());
+                TimeMarks current = marks;
+                if (current != null) current.clear();
+                dumped = 0;
+            }
+        }
+
+        public void recordTimes(boolean record){
+            if (record && marks == null) marks = new TimeMarks(buffer.start());
+            if (!record) marks = null;
+        }
+
+        public TimeMarks getTimeMarks(){
+            return marks;
+        }
+
+        private void replaceBuffer(CaptureBuffer replacement){
+            CaptureBuffer old = buffer;
+            buffer = replacement;
+            old.release();
+        }
+
+        public CaptureBuffer getCaptureBuffer(){
+            return buffer;
         }
     }
 
     /**
-     * Combines {@link OutputStream}'s allowing as many outputs for one output as you wish.
+     * Remembers when output was captured, as pairs of buffer position and time, so dumps can be indexed by time.
+     * A pair is only added once at least 100 ms have passed since the last one, so a busy stream costs next to nothing.
      */
-    private static class OutputStreamCombiner extends OutputStream {
-        private final List<OutputStream> outputStreams;
+    private static class TimeMarks {
+        private static final long INTERVAL_MILLIS = 100;
+        private long[] positions = new long[64];
+        private long[] times = new long[64];
+        private int count;
+        private volatile long lastTime;
 
-        public OutputStreamCombiner(List<OutputStream> outputStreams) {
-            this.outputStreams = outputStreams;
+        // Everything before the first write is given the time the marks were created.
+        public TimeMarks(long position){
+            add(position, System.currentTimeMillis());
         }
 
-        public void write(int b) throws IOException {
-            for (OutputStream os : outputStreams) {
-                os.write(b);
+        // Called right before something is written to the buffer.
+        public void record(CaptureBuffer buffer){
+            long now = System.currentTimeMillis();
+            if (now - lastTime < INTERVAL_MILLIS) return;
+            synchronized (this) {
+                if (now - lastTime < INTERVAL_MILLIS) return;
+                if (count == positions.length) trim(buffer.start());
+                add(buffer.end(), now);
             }
         }
 
-        public void flush() throws IOException {
-            for (OutputStream os : outputStreams) {
-                os.flush();
+        private void add(long position, long time){
+            positions[count] = position;
+            times[count] = time;
+            count++;
+            lastTime = time;
+        }
+
+        // Drops the marks for output the buffer no longer holds, growing if that doesn't free anything.
+        private void trim(long start){
+            int first = 0;
+            while (first + 1 < count && positions[first + 1] <= start) first++;
+            if (first == 0) {
+                positions = Arrays.copyOf(positions, count * 2);
+                times = Arrays.copyOf(times, count * 2);
+                return;
             }
+            count -= first;
+            System.arraycopy(positions, first, positions, 0, count);
+            System.arraycopy(times, first, times, 0, count);
         }
 
-        public void close() throws IOException {
-            for (OutputStream os : outputStreams) {
-                os.close();
+        public synchronized void shift(long amount){
+            for (int i = 0; i < count; i++) positions[i] = Math.max(0, positions[i] - amount);
+        }
+
+        public synchronized void clear(){
+            count = 0;
+            add(0, System.currentTimeMillis());
+        }
+
+        // {positions, times}
+        public synchronized long[][] snapshot(){
+            return new long[][]{Arrays.copyOf(positions, count), Arrays.copyOf(times, count)};
+        }
+    }
+
+    /**
+     * Where a {@link PrintStreamOutputCapturer} keeps the captured bytes.
+     * Positions count every byte ever written to the buffer, so they stay valid while more is written.
+     * Buffers that throw old output away move {@link CaptureBuffer#start()} forward.
+     */
+    private abstract static class CaptureBuffer extends OutputStream {
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        public abstract void write(byte[] b, int off, int len);
+
+        // Position of the oldest byte still kept.
+        public long start(){
+            return 0;
+        }
+
+        // Position the next byte will be written at.
+        public abstract long end();
+
+        // Amount of bytes currently kept.
+        public synchronized long size(){
+            return end() - start();
+        }
+
+        // Copies up to len bytes starting at position, returns how many were copied. 0 if position isn't kept.
+        public abstract int read(long position, byte[] b, int off, int len);
+
+        // Position right after the last newline between from and to, or from if there is none. Reads backwards from to.
+        public long lastLineEnd(long from, long to){
+            byte[] chunk = new byte[8192];
+            long end = to;
+            while (end > from) {
+                long position = Math.max(from, end - chunk.length);
+                int read = read(position, chunk, 0, (int) (end - position));
+                if (read < end - position) return from;
+                for (int i = read - 1; i >= 0; i--) {
+                    if (chunk[i] == '\n') return position + i + 1;
+                }
+                end = position;
+            }
+            return from;
+        }
+
+        // A new, empty buffer with the same limits.
+        public abstract CaptureBuffer emptyCopy();
+
+        // Called once the buffer is no longer used.
+        public void release(){
+        }
+
+        // Once a write couldn't be kept, the buffer to move to, and then to write it into. Null while all is well.
+        public CaptureBuffer fallback(){
+            return null;
+        }
+
+        public void copyFrom(CaptureBuffer other){
+            synchronized (other) {
+                byte[] chunk = new byte[8192];
+                long position = other.start();
+                int read;
+                while ((read = other.read(position, chunk, 0, chunk.length)) > 0) {
+                    write(chunk, 0, read);
+                    position += read;
+                }
+            }
+        }
+
+        public synchronized String toString(){
+            long size = size();
+            if (size > Integer.MAX_VALUE - 8) throw new OutOfMemoryError("Captured output is too large for a String.");
+            byte[] all = new byte[(int) size];
+            int read = read(start(), all, 0, all.length);
+            return new String(all, 0, read);
+        }
+    }
+
+    /**
+     * Keeps everything that is captured, growing as needed.
+     */
+    private static class HeapCaptureBuffer extends CaptureBuffer {
+        private byte[] data = new byte[256];
+        private int count;
+
+        public synchronized void write(byte[] b, int off, int len) {
+            if (len > data.length - count) {
+                int needed = count + len;
+                if (needed < 0) throw new OutOfMemoryError("Captured output is too large.");
+                data = Arrays.copyOf(data, Math.max(needed, (int) Math.min(data.length * 2L, Integer.MAX_VALUE - 8)));
+            }
+            System.arraycopy(b, off, data, count, len);
+            count += len;
+        }
+
+        public synchronized long end() {
+            return count;
+        }
+
+        public synchronized int read(long position, byte[] b, int off, int len) {
+            if (position >= count) return 0;
+            int amount = (int) Math.min(len, count - position);
+            System.arraycopy(data, (int) position, b, off, amount);
+            return amount;
+        }
+
+        public CaptureBuffer emptyCopy() {
+            return new HeapCaptureBuffer();
+        }
+    }
+
+    /**
+     * Only keeps the most recent {@code maxBytes} bytes, and optionally only the most recent {@code maxLines} lines.
+     * Everything is kept in one preallocated array, so memory use never changes no matter how much is captured.
+     */
+    private static class RingCaptureBuffer extends CaptureBuffer {
+        private final byte[] data;
+        private final int maxLines;
+        // Positions right after each of the most recent newlines, oldest first starting at lineIndex.
+        private final long[] lineEnds;
+        private int lineIndex;
+        private long lines;
+        // Total bytes ever written; the next byte goes to data[written % data.length].
+        private long written;
+        // Whether the oldest byte kept starts a line. Once the ring has wrapped, a line cut in half is skipped.
+        private boolean wholeFirstLine;
+        // Where the first whole line starts, for the oldest byte it was worked out for.
+        private long tornFrom = -1;
+        private long tornLineStart;
+
+        public RingCaptureBuffer(int maxBytes, int maxLines){
+            if (maxBytes < 1) throw new IllegalArgumentException("The capture limit must be at least 1 byte.");
+            if (maxLines < 0) throw new IllegalArgumentException("The line limit can't be negative.");
+            this.data = new byte[maxBytes];
+            this.maxLines = maxLines;
+            // One extra, so the end of the line before the kept ones is known.
+            this.lineEnds = (maxLines > 0) ? new long[maxLines + 1] : null;
+        }
+
+        public synchronized void write(byte[] b, int off, int len) {
+            if (lineEnds != null) {
+                for (int i = off; i < off + len; i++) {
+                    if (b[i] == '\n') {
+                        lineEnds[lineIndex] = written + (i - off) + 1;
+                        lineIndex = (lineIndex + 1) % lineEnds.length;
+                        lines++;
+                    }
+                }
+            }
+            long oldest = written + len - data.length;
+            if (oldest > 0 && len > 0) {
+                // The byte right before the oldest one kept is about to be overwritten, or was never stored.
+                long before = oldest - 1;
+                wholeFirstLine = ((before >= written) ? b[off + (int) (before - written)] : data[(int) (before % data.length)]) == '\n';
+            }
+            // Only the tail of a write that is bigger than the whole buffer can be kept.
+            if (len > data.length) {
+                written += len - data.length;
+                off += len - data.length;
+                len = data.length;
+            }
+            int position = (int) (written % data.length);
+            int first = Math.min(len, data.length - position);
+            System.arraycopy(b, off, data, position, first);
+            System.arraycopy(b, off + first, data, 0, len - first);
+            written += len;
+        }
+
+        public synchronized long start(){
+            long start = Math.max(0, written - data.length);
+            if (start > 0 && !wholeFirstLine) start = nextLineStart(start);
+            if (lineEnds != null && lines > maxLines) {
+                // lineIndex points at the oldest of the maxLines + 1 recorded ends.
+                start = Math.max(start, lineEnds[lineIndex]);
+            }
+            return start;
+        }
+
+        public synchronized long end() {
+            return written;
+        }
+
+        public synchronized int read(long position, byte[] b, int off, int len) {
+            if (position < start() || position >= written) return 0;
+            int amount = (int) Math.min(len, written - position);
+            int from = (int) (position % data.length);
+            int first = Math.min(amount, data.length - from);
+            System.arraycopy(data, from, b, off, first);
+            System.arraycopy(data, 0, b, off + first, amount - first);
+            return amount;
+        }
+
+        // Position right after the first newline at or after position. Position itself if there is none,
+        // a partial line is still better than nothing.
+        private long nextLineStart(long position){
+            if (position == tornFrom) return tornLineStart;
+            for (long at = position; at < written; at++) {
+                if (data[(int) (at % data.length)] == '\n') {
+                    tornFrom = position;
+                    tornLineStart = at + 1;
+                    return tornLineStart;
+                }
+            }
+            return position;
+        }
+
+        public CaptureBuffer emptyCopy() {
+            return new RingCaptureBuffer(data.length, maxLines);
+        }
+    }
+
+    /**
+     * Keeps everything that is captured, but only the first {@code heapBytes} on the heap.
+     * Past that, everything is moved into memory-mapped segment files, so the capture lives in the OS page cache instead.
+     * Each segment starts with a small header holding how many bytes of it are in use, which is updated on every write.
+     * If the JVM crashes, the segment files are left behind and can be read back with {@link Logger#recoverSpilledCapture}.
+     * They are deleted when the JVM exits normally, or when the buffer is no longer used.
+     * If a segment can't be made (the disk is full, the directory was deleted), the write is refused and the capture moves
+     * to a ring of the most recent output on the heap instead.
+     */
+    private static class SpillCaptureBuffer extends CaptureBuffer {
+        private static final int MAGIC = 0x4C475347; // "LGSG"
+        private static final int HEADER_SIZE = 32;
+        private static final int INDEX_OFFSET = 8;
+        private static final int USED_OFFSET = 16;
+        private static final String EXTENSION = ".seg";
+        private static final AtomicLong ids = new AtomicLong();
+        // Every directory segments were put in, emptied of this process's segments when the JVM shuts down.
+        private static final Set<Path> directories = ConcurrentHashMap.newKeySet();
+        // sun.misc.Unsafe#invokeCleaner, to unmap a segment right away instead of once it is collected. Null if missing.
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Segments are unmapped once they are collected instead.
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private final Path directory;
+        private final int heapBytes;
+        private final int segmentSize;
+        private final String name;
+        private byte[] heap;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        private final List<Path> files = new ArrayList<>();
+        private long size;
+        // Set once the segments have been unmapped, reading them after that would crash the JVM.
+        private boolean released;
+        // Set once a segment couldn't be made, nothing more is written.
+        private boolean failed;
+
+        public SpillCaptureBuffer(Path directory, int heapBytes, int segmentSize){
+            if (heapBytes < 0) throw new IllegalArgumentException("The heap size can't be negative.");
+            if (segmentSize < 1) throw new IllegalArgumentException("The segment size must be at least 1 byte.");
+            this.directory = directory;
+            this.heapBytes = heapBytes;
+            this.segmentSize = segmentSize;
+            this.name = "capture-" + ProcessHandle.current().pid() + "-" + ids.incrementAndGet();
+            this.heap = new byte[Math.min(heapBytes, 256)];
+            if (directories.add(directory)) addShutdownHook();
+        }
+
+        public synchronized void write(byte[] b, int off, int len) {
+            if (released || failed) return;
+            if (heap != null) {
+                if (size + len <= heapBytes) {
+                    if (size + len > heap.length) {
+                        heap = Arrays.copyOf(heap, (int) Math.min(heapBytes, Math.max(size + len, heap.length * 2L)));
+                    }
+                    System.arraycopy(b, off, heap, (int) size, len);
+                    size += len;
+                    return;
+                }
+                // Nothing is moved off of the heap unless it all has somewhere to go.
+                if (!reserve(size + len)) return;
+                spill();
+            }
+            if (!reserve(size + len)) return;
+            while (len > 0) {
+                int inSegment = (int) (size % segmentSize);
+                MappedByteBuffer segment = segments.get((int) (size / segmentSize));
+                int amount = Math.min(len, segmentSize - inSegment);
+                segment.put(HEADER_SIZE + inSegment, b, off, amount);
+                size += amount;
+                // Written after the data, so a recovered segment never claims bytes it doesn't have.
+                segment.putInt(USED_OFFSET, inSegment + amount);
+                off += amount;
+                len -= amount;
+            }
+        }
+
+        // Moves what is on the heap into the first segment.
+        private void spill(){
+            byte[] moving = heap;
+            int amount = (int) size;
+            heap = null;
+            size = 0;
+            write(moving, 0, amount);
+        }
+
+        // Makes segments until they hold total bytes. Returns false, once, if one couldn't be made.
+        private boolean reserve(long total){
+            while ((long) segments.size() * segmentSize < total) {
+                try {
+                    addSegment();
+                } catch (IOException e) {
+                    failed = true;
+                    Logger.err("Failed to create a capture segment in " + directory + ", only keeping the most recent output from now on.");
+                    e.printStackTrace();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void addSegment() throws IOException {
+            Path file = directory.resolve(name + "-" + String.format("%06d", segments.size()) + EXTENSION);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) segmentSize);
+                segment.putInt(0, MAGIC);
+                segment.putInt(INDEX_OFFSET, segments.size());
+                segment.putInt(USED_OFFSET, 0);
+                segments.add(segment);
+                files.add(file);
+            }
+        }
+
+        // The most recent output, at least 1 MB of it, is kept on the heap once segments can't be made.
+        public synchronized CaptureBuffer fallback() {
+            return failed ? new RingCaptureBuffer(Math.max(heapBytes, 1024 * 1024), 0) : null;
+        }
+
+        public synchronized long end() {
+            return size;
+        }
+
+        public synchronized int read(long position, byte[] b, int off, int len) {
+            if (released || position >= size) return 0;
+            int amount = (int) Math.min(len, size - position);
+            if (heap != null) {
+                System.arraycopy(heap, (int) position, b, off, amount);
+                return amount;
+            }
+            int copied = 0;
+            while (copied < amount) {
+                MappedByteBuffer segment = segments.get((int) (position / segmentSize));
+                int inSegment = (int) (position % segmentSize);
+                int chunk = Math.min(amount - copied, segmentSize - inSegment);
+                segment.get(HEADER_SIZE + inSegment, b, off + copied, chunk);
+                copied += chunk;
+                position += chunk;
+            }
+            return amount;
+        }
+
+        public CaptureBuffer emptyCopy() {
+            return new SpillCaptureBuffer(directory, heapBytes, segmentSize);
+        }
+
+        // Unmaps and deletes every segment, so the disk space and address space are given back now.
+        public synchronized void release() {
+            released = true;
+            heap = null;
+            for (MappedByteBuffer segment : segments) unmap(segment);
+            segments.clear();
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // Still mapped on some systems, deleted when the JVM shuts down instead.
+                }
+            }
+            files.clear();
+        }
+
+        private static void unmap(MappedByteBuffer segment){
+            if (INVOKE_CLEANER == null) return;
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, segment);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Unmapped once it is collected instead.
+            }
+        }
+
+        // Deletes the segments this process left in any directory, called when the JVM shuts down.
+        public static void deleteAll(){
+            String pattern = "capture-" + ProcessHandle.current().pid() + "-*" + EXTENSION;
+            for (Path directory : directories) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, pattern)) {
+                    for (Path file : stream) Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // Left behind like after a crash, recoverSpilledCapture() can still read them.
+                }
+            }
+        }
+
+        /**
+         * Reads every group of segment files in the directory back into one text file per group.
+         * @return {@code List} of the files that were written.
+         */
+        public static List<Path> recover(Path directory, Path output) throws IOException {
+            Map<String, List<Path>> groups = new TreeMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "capture-*" + EXTENSION)) {
+                for (Path file : stream) {
+                    String fileName = file.getFileName().toString();
+                    String group = fileName.substring(0, fileName.lastIndexOf('-'));
+                    groups.computeIfAbsent(group, k -> new ArrayList<>()).add(file);
+                }
+            }
+            List<Path> recovered = new ArrayList<>();
+            for (Map.Entry<String, List<Path>> group : groups.entrySet()) {
+                List<Path> files = group.getValue();
+                // Zero padded, so name order is segment order.
+                Collections.sort(files);
+                Path target = output.resolve(group.getKey() + ".txt");
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                    for (Path file : files) {
+                        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                            if (in.size() < HEADER_SIZE) continue;
+                            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                            in.read(header, 0);
+                            if (header.getInt(0) != MAGIC) continue;
+                            long used = Math.min(header.getInt(USED_OFFSET), in.size() - HEADER_SIZE);
+                            long copied = 0;
+                            while (copied < used) {
+                                copied += in.transferTo(HEADER_SIZE + copied, used - copied, out);
+                            }
+                        }
+                    }
+                }
+                recovered.add(target);
+            }
+            return recovered;
+        }
+    }
+
+    /**
+     * Writes the {@code .idx} file of an indexed dump, as lines are written to the dump.
+     * Lines are grouped into blocks of about {@code blockBytes}. Every block is written as:
+     * its offset in the dump, its length, the stream, a mask of the levels in it, the level of every line,
+     * and the line number and time of every line that was captured at a different time than the line before it.
+     * @see DumpReader
+     */
+    private static class DumpIndexWriter implements Closeable {
+        private final DataOutputStream out;
+        private final int blockBytes;
+        // Offset of the first line of the block, -1 when no block has been started.
+        private long blockStart = -1;
+        private long blockEnd;
+        private byte stream;
+        private int levelMask;
+        private byte[] levels = new byte[256];
+        private int lineCount;
+        private int[] changeLines = new int[16];
+        private long[] changeTimes = new long[16];
+        private int changeCount;
+
+        public DumpIndexWriter(Path file, int blockBytes) throws IOException {
+            this(file, blockBytes, false);
+        }
+
+        // When appending to an index that already has its header, new blocks are added after the old ones.
+        public DumpIndexWriter(Path file, int blockBytes, boolean append) throws IOException {
+            boolean existing = append && Files.exists(file) && Files.size(file) > 0;
+            this.out = new DataOutputStream(new BufferedOutputStream(existing
+                    ? Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                    : Files.newOutputStream(file, append ? StandardOpenOption.CREATE : StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)));
+            this.blockBytes = blockBytes;
+            if (existing) return;
+            out.writeInt(DumpReader.MAGIC);
+            out.writeInt(DumpReader.VERSION);
+            out.writeInt(blockBytes);
+            out.writeInt(0);
+        }
+
+        public void line(byte stream, long start, long end, long time, byte level) throws IOException {
+            if (blockStart >= 0 && (stream != this.stream || start != blockEnd)) flush();
+            if (blockStart < 0) {
+                blockStart = start;
+                this.stream = stream;
+            }
+            if (lineCount == levels.length) levels = Arrays.copyOf(levels, lineCount * 2);
+            levels[lineCount] = level;
+            levelMask |= 1 << level;
+            if (changeCount == 0 || changeTimes[changeCount - 1] != time) {
+                if (changeCount == changeLines.length) {
+                    changeLines = Arrays.copyOf(changeLines, changeCount * 2);
+                    changeTimes = Arrays.copyOf(changeTimes, changeCount * 2);
+                }
+                changeLines[changeCount] = lineCount;
+                changeTimes[changeCount] = time;
+                changeCount++;
+            }
+            lineCount++;
+            blockEnd = end;
+            if (blockEnd - blockStart >= blockBytes) flush();
+        }
+
+        // Writes the current block, if there is one.
+        public void flush() throws IOException {
+            if (blockStart < 0) return;
+            out.writeLong(blockStart);
+            out.writeInt((int) (blockEnd - blockStart));
+            out.writeByte(stream);
+            out.writeByte(levelMask);
+            out.writeInt(lineCount);
+            out.write(levels, 0, lineCount);
+            out.writeInt(changeCount);
+            for (int i = 0; i < changeCount; i++) {
+                out.writeInt(changeLines[i]);
+                out.writeLong(changeTimes[i]);
+            }
+            blockStart = -1;
+            levelMask = 0;
+            lineCount = 0;
+            changeCount = 0;
+        }
+
+        public void close() throws IOException {
+            flush();
+            out.close();
+        }
+    }
+
+    /**
+     * A dump prepared ahead of time by {@link Logger#enableEmergencyDump(boolean, boolean)}, for when there is no memory
+     * left to prepare one. Everything it needs is made when it is created: the open file, a {@link DumpWriter} with its
+     * buffers and the uncaught exception handler. One shutdown hook, made with the first dump, is shared by all of them.
+     * Writing it only reads the capture buffers and writes them to the file. Without a previous handler, stack traces are printed by a {@link TracePrinter}.
+     */
+    private static class EmergencyDump {
+        private static final EmergencyDump[] NONE = new EmergencyDump[0];
+        // Every prepared dump, handled by one shutdown hook made when the first one is prepared.
+        private static volatile EmergencyDump[] prepared = NONE;
+        private static Thread shutdownHook;
+
+        private final Logger logger;
+        private final Path file;
+        private final FileChannel channel;
+        private final DumpWriter writer;
+        private final boolean json;
+        private final boolean onShutdown;
+        // Set by whatever writes or deletes the file first.
+        private final AtomicBoolean used = new AtomicBoolean();
+        private final Thread.UncaughtExceptionHandler previousHandler;
+        private final Thread.UncaughtExceptionHandler handler;
+        // Prints the stack trace when there is no previous handler to do it.
+        private final TracePrinter tracePrinter;
+
+        public EmergencyDump(Logger logger, Path file, boolean onUncaughtException, boolean onShutdown) throws IOException {
+            this.logger = logger;
+            this.file = file;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.json = outputFormat == FORMAT_JSON;
+            this.writer = new DumpWriter(channel, null, json);
+            // The first write and force of a channel allocate, so they are done now and undone.
+            channel.write(ByteBuffer.allocateDirect(1));
+            channel.force(false);
+            channel.truncate(0);
+            channel.position(0);
+            this.onShutdown = onShutdown;
+            add(this);
+            this.previousHandler = onUncaughtException ? Thread.getDefaultUncaughtExceptionHandler() : null;
+            this.handler = onUncaughtException ? this::uncaughtException : null;
+            this.tracePrinter = (onUncaughtException && previousHandler == null) ? new TracePrinter() : null;
+            if (onUncaughtException) Thread.setDefaultUncaughtExceptionHandler(handler);
+        }
+
+        private static synchronized void add(EmergencyDump dump){
+            EmergencyDump[] current = prepared;
+            EmergencyDump[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = dump;
+            prepared = updated;
+            if (shutdownHook == null) {
+                shutdownHook = new Thread(EmergencyDump::shutdownAll, "Logger-Emergency-Dump");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+        }
+
+        private static synchronized void remove(EmergencyDump dump){
+            EmergencyDump[] current = prepared;
+            int index = Arrays.asList(current).indexOf(dump);
+            if (index < 0) return;
+            EmergencyDump[] updated = new EmergencyDump[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            prepared = (updated.length == 0) ? NONE : updated;
+        }
+
+        private static void shutdownAll(){
+            EmergencyDump[] dumps = prepared;
+            for (int i = 0; i < dumps.length; i++) dumps[i].shutdown();
+        }
+
+        public boolean write(){
+            if (!used.compareAndSet(false, true)) return false;
+            long started = System.nanoTime();
+            boolean succeeded = false;
+            try {
+                // Whatever is stuck or out of memory outside of the dump can't stop it.
+                try {
+                    ConsoleBatcher batcher = consoleBatcher;
+                    if (batcher != null) batcher.tryFlush();
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    // The batched lines are left out.
+                }
+                // The captures copy in what was just printed on their own threads, a stack trace should make it in.
+                OutputStreamCombiner.awaitSubscribers(1000);
+                if (!json) writer.writeText("------Standard Out------\r\n");
+                writer.writeStripped(logger.outputCapturer.getCaptureBuffer(), null, (byte) 0);
+                if (logger.bothStreams) {
+                    if (!json) writer.writeText("\r\n\r\n\r\n------Error Out------\r\n");
+                    writer.writeStripped(logger.errCapturer.getCaptureBuffer(), null, (byte) 1);
+                }
+                writer.finish();
+                channel.force(false);
+                succeeded = true;
+            } catch (IOException e) {
+                // Reported by the return value, printing it would allocate.
+            } finally {
+                closeChannel();
+            }
+            try {
+                dumpFinished(started, succeeded);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                // Only the metrics miss it.
+            }
+            return succeeded;
+        }
+
+        // The stack trace is printed first, so it ends up in the dump.
+        private void uncaughtException(Thread thread, Throwable e){
+            try {
+                if (previousHandler != null) {
+                    previousHandler.uncaughtException(thread, e);
+                } else {
+                    tracePrinter.print(thread, e, System.err);
+                }
+            } finally {
+                write();
+            }
+        }
+
+        private void shutdown(){
+            if (onShutdown) write();
+            else discard();
+        }
+
+        // Deletes the file, if nothing has been written to it.
+        private void discard(){
+            if (!used.compareAndSet(false, true)) return;
+            closeChannel();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Left behind empty.
+            }
+        }
+
+        private void closeChannel(){
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing was left to write.
+            }
+        }
+
+        public void close(){
+            remove(this);
+            if (handler != null && Thread.getDefaultUncaughtExceptionHandler() == handler) {
+                Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+            }
+            discard();
+        }
+    }
+
+    /**
+     * Prints an uncaught exception the way the JVM would, into buffers made ahead of time, so printing it doesn't
+     * allocate either. The header and every frame are encoded into a reserved buffer, which is written out whenever it
+     * fills up. Causes are printed too, with the frames they share with the exception before them left out.
+     * {@link Throwable#getStackTrace()} still copies the frames; if there is no memory for that, only the header is printed.
+     */
+    private static class TracePrinter {
+        private static final byte[] EXCEPTION_IN_THREAD = "Exception in thread \"".getBytes(CONSOLE_CHARSET);
+        private static final byte[] THREAD_END = "\" ".getBytes(CONSOLE_CHARSET);
+        private static final byte[] MESSAGE = ": ".getBytes(CONSOLE_CHARSET);
+        private static final byte[] AT = "\tat ".getBytes(CONSOLE_CHARSET);
+        private static final byte[] CAUSED_BY = "Caused by: ".getBytes(CONSOLE_CHARSET);
+        private static final byte[] MORE = "\t... ".getBytes(CONSOLE_CHARSET);
+        private static final byte[] MORE_END = " more".getBytes(CONSOLE_CHARSET);
+        private static final byte[] NATIVE_METHOD = "(Native Method)".getBytes(CONSOLE_CHARSET);
+        private static final byte[] UNKNOWN_SOURCE = "(Unknown Source)".getBytes(CONSOLE_CHARSET);
+        private static final byte[] NEW_LINE = System.lineSeparator().getBytes(CONSOLE_CHARSET);
+        private static final StackTraceElement[] NO_FRAMES = new StackTraceElement[0];
+        // Enough for a cause that refers back to an earlier one.
+        private static final int MAX_CAUSES = 64;
+
+        private final byte[] reserved = new byte[8192];
+        private final ByteBuffer bytes = ByteBuffer.wrap(reserved);
+        private final char[] text = new char[512];
+        private final CharBuffer chars = CharBuffer.wrap(text);
+        private final CharsetEncoder encoder = CONSOLE_CHARSET.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private PrintStream out;
+
+        // Two threads can die at the same time, their traces are printed one after the other.
+        public synchronized void print(Thread thread, Throwable e, PrintStream out){
+            this.out = out;
+            try {
+                put(EXCEPTION_IN_THREAD);
+                put(thread.getName());
+                put(THREAD_END);
+                StackTraceElement[] enclosing = NO_FRAMES;
+                int causes = 0;
+                for (Throwable current = e; current != null && causes <= MAX_CAUSES; current = next(current, e)) {
+                    if (causes++ > 0) put(CAUSED_BY);
+                    put(current.getClass().getName());
+                    String message = current.getLocalizedMessage();
+                    if (message != null) {
+                        put(MESSAGE);
+                        put(message);
+                    }
+                    put(NEW_LINE);
+                    StackTraceElement[] frames = frames(current);
+                    int last = frames.length - 1;
+                    for (int other = enclosing.length - 1; last >= 0 && other >= 0 && frames[last].equals(enclosing[other]); other--) {
+                        last--;
+                    }
+                    for (int i = 0; i <= last; i++) put(frames[i]);
+                    if (last < frames.length - 1) {
+                        put(MORE);
+                        put(frames.length - 1 - last);
+                        put(MORE_END);
+                        put(NEW_LINE);
+                    }
+                    enclosing = frames;
+                }
+            } finally {
+                flush();
+                chars.clear();
+                encoder.reset();
+                this.out = null;
+            }
+        }
+
+        private static Throwable next(Throwable current, Throwable first){
+            Throwable cause = current.getCause();
+            return (cause == current || cause == first) ? null : cause;
+        }
+
+        private static StackTraceElement[] frames(Throwable e){
+            try {
+                return e.getStackTrace();
+            } catch (OutOfMemoryError outOfMemory) {
+                return NO_FRAMES;
+            }
+        }
+
+        // The same as StackTraceElement.toString(), apart from module versions.
+        private void put(StackTraceElement frame){
+            put(AT);
+            if (frame.getModuleName() != null) {
+                put(frame.getModuleName());
+                put((byte) '/');
+            }
+            put(frame.getClassName());
+            put((byte) '.');
+            put(frame.getMethodName());
+            if (frame.isNativeMethod()) {
+                put(NATIVE_METHOD);
+            } else if (frame.getFileName() == null) {
+                put(UNKNOWN_SOURCE);
+            } else {
+                put((byte) '(');
+                put(frame.getFileName());
+                if (frame.getLineNumber() >= 0) {
+                    put((byte) ':');
+                    put(frame.getLineNumber());
+                }
+                put((byte) ')');
+            }
+            put(NEW_LINE);
+        }
+
+        private void put(String value){
+            if (value == null) value = "null";
+            for (int from = 0; from < value.length(); ) {
+                int to = Math.min(value.length(), from + chars.remaining());
+                value.getChars(from, to, text, chars.position());
+                chars.position(chars.position() + to - from);
+                from = to;
+                chars.flip();
+                while (encoder.encode(chars, bytes, false).isOverflow()) flush();
+                // Half of a surrogate pair waits for the rest of it.
+                chars.compact();
+            }
+        }
+
+        private void put(byte[] value){
+            if (bytes.remaining() < value.length) flush();
+            bytes.put(value);
+        }
+
+        private void put(byte value){
+            if (!bytes.hasRemaining()) flush();
+            bytes.put(value);
+        }
+
+        // Digits are put from the end, into the space left at the end of the buffer.
+        private void put(int value){
+            if (bytes.remaining() < 11) flush();
+            int end = bytes.position() + 11;
+            int at = end;
+            do {
+                reserved[--at] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            System.arraycopy(reserved, at, reserved, bytes.position(), end - at);
+            bytes.position(bytes.position() + end - at);
+        }
+
+        private void flush(){
+            if (bytes.position() > 0) out.write(reserved, 0, bytes.position());
+            out.flush();
+            bytes.clear();
+        }
+    }
+
+    /**
+     * What a captured stream held when a dump was asked for: the buffer, and where it started and ended.
+     * Buffers only ever add to the end, so the range stays readable while more is captured. A limited buffer may throw
+     * the oldest part away before it is written, which is then skipped.
+     */
+    private static class DumpSection {
+        private final CaptureBuffer buffer;
+        private final TimeMarks marks;
+        private final byte stream;
+        private final long start;
+        private final long end;
+
+        public DumpSection(PrintStreamOutputCapturer capturer, byte stream){
+            this.buffer = capturer.getCaptureBuffer();
+            this.marks = capturer.getTimeMarks();
+            this.stream = stream;
+            this.start = buffer.start();
+            this.end = buffer.end();
+        }
+
+        public void writeTo(DumpWriter writer) throws IOException {
+            writer.writeStripped(buffer, marks, stream, start, end);
+        }
+
+        // Into a file of its own, for writing next to another section. Never indexed.
+        public Void writeTo(Path file, String header, boolean json) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DumpWriter writer = new DumpWriter(channel, null, json);
+                if (header != null) writer.writeText(header);
+                writeTo(writer);
+                writer.finish();
+            }
+            return null;
+        }
+
+        // Waits for a forked section, throwing what it threw.
+        public static void join(ForkJoinTask<Void> task) throws IOException {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (e.getCause() instanceof IOException cause) throw cause;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes dumps for {@link Logger#logConsoleAsync()} and {@link Logger#dumpConsoleAsync()} on a small pool of its own.
+     * It is a fork/join pool, so a dump can fork its error section and wait for it without tying up a thread.
+     * Keeps count of the dumps that are queued or being written, so shutdown can wait for them.
+     */
+    private static class DumpExecutor {
+        private final ForkJoinPool pool;
+        private int pending;
+
+        public DumpExecutor(){
+            int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+            pool = new ForkJoinPool(threads, p -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("Logger-Dump-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+
+        public <T> CompletableFuture<T> submit(Callable<T> task){
+            CompletableFuture<T> future = new CompletableFuture<>();
+            synchronized (this) {
+                pending++;
+            }
+            try {
+                pool.execute(() -> {
+                    try {
+                        future.complete(task.call());
+                    } catch (Exception e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        done();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                done();
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+
+        private synchronized void done(){
+            pending--;
+            notifyAll();
+        }
+
+        public synchronized boolean await(long timeoutMillis){
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (pending > 0) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes captured output to a file without ever holding more than one small chunk of it in memory.
+     * The capture is read in chunks, ANSI escape sequences (the console colors) are removed in a single pass,
+     * and the result is written straight to a {@link FileChannel}.
+     * The escape sequence state is kept between chunks, so a sequence split across two chunks is still removed.
+     */
+    private static class DumpWriter {
+        private static final int CHUNK_SIZE = 8192;
+        // Escape sequence states
+        private static final byte TEXT = 0;
+        private static final byte ESCAPE = 1;
+        private static final byte CONTROL_SEQUENCE = 2;
+
+        private static final byte[] WRAP_OUT = "{\"stream\":\"out\",\"message\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] WRAP_ERR = "{\"stream\":\"err\",\"message\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] WRAP_END = "\"}".getBytes(StandardCharsets.US_ASCII);
+        // Where the first letter of the level is in a JSON line from the logger, the timestamp always has the same length.
+        private static final int JSON_LEVEL_AT = "{\"timestamp\":\"2022-10-18T14:02:00.000Z\",\"level\":\"".length();
+
+        private final FileChannel channel;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final ByteBuffer out = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        private byte state = TEXT;
+        // Bytes written to the file so far.
+        private long written;
+        // JSON lines: lines that aren't JSON objects already are wrapped in one.
+        private final boolean json;
+        private boolean wrapped;
+        private int lineBytes;
+
+        // Everything below is only used when the dump is indexed.
+        private final DumpIndexWriter index;
+        private byte stream;
+        private byte[][] colors;
+        private long[] markPositions;
+        private long[] markTimes;
+        private int markCursor;
+        // The escape sequence being read, and whether it came before any text on its line.
+        private final byte[] sequence = new byte[32];
+        private int sequenceLength;
+        private boolean sequenceAtLineStart;
+        private boolean lineStarted;
+        private long lineOffset;
+        private long lineTime;
+        private byte lineLevel;
+        private byte colorLevel;
+
+        public DumpWriter(FileChannel channel, DumpIndexWriter index, boolean json){
+            this.channel = channel;
+            this.index = index;
+            this.json = json;
+        }
+
+        // For appending to a file that already has this many bytes, so the index points at the right offsets.
+        public void startAt(long size){
+            written = size;
+        }
+
+        // Only used for the section headers, which are plain ASCII.
+        public void writeText(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                put((byte) text.charAt(i));
+            }
+        }
+
+        // Writes everything the buffer holds right now. Output captured while writing is left for the next dump.
+        // Stream is 0 for standard out and 1 for error out, marks may be null when the dump isn't indexed.
+        public void writeStripped(CaptureBuffer buffer, TimeMarks marks, byte stream) throws IOException {
+            writeStripped(buffer, marks, stream, buffer.start(), buffer.end());
+        }
+
+        // Writes the buffer from position up to end.
+        public void writeStripped(CaptureBuffer buffer, TimeMarks marks, byte stream, long position, long end) throws IOException {
+            state = TEXT;
+            if (index != null || json) startSection(marks, stream);
+            while (position < end) {
+                int read = buffer.read(position, chunk, 0, (int) Math.min(chunk.length, end - position));
+                if (read == 0) {
+                    // The oldest output was thrown away while writing, skip to what is still kept.
+                    long start = buffer.start();
+                    if (start <= position) break;
+                    position = start;
+                    state = TEXT;
+                    continue;
+                }
+                strip(chunk, read, position);
+                position += read;
+            }
+            if (lineStarted) {
+                // The last line hasn't been finished yet.
+                if (json) putText((byte) '\n', end);
+                else endLine();
+            }
+            if (index != null) index.flush();
+        }
+
+        private void strip(byte[] bytes, int length, long position) throws IOException {
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (state == TEXT) {
+                    if (b == 0x1B) {
+                        state = ESCAPE;
+                        if (index != null) startSequence();
+                    } else {
+                        putText(b, position + i);
+                    }
+                } else if (state == ESCAPE) {
+                    if (b == '[') {
+                        state = CONTROL_SEQUENCE;
+                        if (index != null) addToSequence(b);
+                    } else {
+                        // Two byte sequences end here; anything else wasn't a sequence at all.
+                        if (b < 0x40 || b > 0x5F) putText(b, position + i);
+                        state = TEXT;
+                    }
+                } else {
+                    if (index != null) addToSequence(b);
+                    if (b >= 0x40 && b <= 0x7E) {
+                        // Final byte of the control sequence.
+                        state = TEXT;
+                        if (index != null) endSequence();
+                    }
+                }
+            }
+        }
+
+        private void putText(byte b, long position) throws IOException {
+            if (index == null && !json) {
+                put(b);
+                return;
+            }
+            if (!lineStarted) startLine(position, b);
+            if (b == '\n') {
+                if (wrapped) putAll(WRAP_END);
+                put(b);
+                endLine();
+            } else if (!wrapped) {
+                if (json && lineBytes++ == JSON_LEVEL_AT) jsonLevel(b);
+                put(b);
+            } else if (b != '\r') {
+                putEscaped(b);
+            }
+        }
+
+        // The first letter of the level of a JSON line tells which one it is.
+        private void jsonLevel(byte b){
+            if (b == 'L') lineLevel = LEVEL_LOG;
+            else if (b == 'I') lineLevel = LEVEL_INFO;
+            else if (b == 'W') lineLevel = LEVEL_WARN;
+            else if (b == 'E') lineLevel = LEVEL_ERR;
+        }
+
+        private void putAll(byte[] b) throws IOException {
+            for (byte value : b) put(value);
+        }
+
+        // Inside a JSON string. Anything past ASCII is left as it is, the charset of the console decides what it means.
+        private void putEscaped(byte b) throws IOException {
+            if (b == '"' || b == '\\') {
+                put((byte) '\\');
+                put(b);
+            } else if (b >= 0 && b < 0x20) {
+                put((byte) '\\');
+                if (b == '\t') {
+                    put((byte) 't');
+                } else {
+                    put((byte) 'u');
+                    put((byte) '0');
+                    put((byte) '0');
+                    put(LineEncoder.HEX[b >> 4]);
+                    put(LineEncoder.HEX[b & 0xF]);
+                }
+            } else {
+                put(b);
+            }
+        }
+
+        private void put(byte b) throws IOException {
+            if (!out.hasRemaining()) drain();
+            out.put(b);
+            written++;
+        }
+
+        private void startSection(TimeMarks marks, byte stream){
+            this.stream = stream;
+            lineStarted = false;
+            // Everything else is only for the index, an emergency dump has none and can't allocate.
+            if (index == null) return;
+            colors = colorBytes;
+            long[][] snapshot = (marks == null) ? new long[][]{{0}, {System.currentTimeMillis()}} : marks.snapshot();
+            markPositions = snapshot[0];
+            markTimes = snapshot[1];
+            markCursor = 0;
+            // Until a line says otherwise, plain output is a normal message and plain error output an error.
+            lineLevel = (stream == 0) ? LEVEL_LOG : LEVEL_ERR;
+            colorLevel = -1;
+        }
+
+        private void startLine(long position, byte first) throws IOException {
+            lineStarted = true;
+            lineOffset = written;
+            lineBytes = 0;
+            if (json) {
+                wrapped = first != '{';
+                if (wrapped) putAll((stream == 0) ? WRAP_OUT : WRAP_ERR);
+            }
+            if (index == null) return;
+            while (markCursor + 1 < markPositions.length && markPositions[markCursor + 1] <= position) markCursor++;
+            lineTime = markTimes[markCursor];
+            // Lines without a color of their own (stack traces, wrapped text) belong with the line before them.
+            if (colorLevel >= 0) lineLevel = colorLevel;
+            colorLevel = -1;
+        }
+
+        private void endLine() throws IOException {
+            lineStarted = false;
+            if (index != null) index.line(stream, lineOffset, written, lineTime, lineLevel);
+        }
+
+        private void startSequence(){
+            sequence[0] = 0x1B;
+            sequenceLength = 1;
+            sequenceAtLineStart = !lineStarted;
+        }
+
+        private void addToSequence(byte b){
+            if (sequenceLength < sequence.length) sequence[sequenceLength] = b;
+            sequenceLength++;
+        }
+
+        // A color at the start of a line tells which level logged it.
+        private void endSequence(){
+            if (!sequenceAtLineStart || sequenceLength > sequence.length) return;
+            for (byte level = 0; level < colors.length; level++) {
+                if (Arrays.equals(sequence, 0, sequenceLength, colors[level], 0, colors[level].length)) {
+                    colorLevel = level;
+                    return;
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+
+        public void finish() throws IOException {
+            drain();
+        }
+    }
+
+    /**
+     * The one stream put in place of {@link System#out} or {@link System#err} while anything is capturing it.
+     * Writes go to the original stream, then are handed to every subscribed capture. There is one for each of the two
+     * streams in the whole process, installed when the first capture starts and removed again once the last one stops,
+     * so every capturing {@link Logger} only adds one more copy of each write rather than another stream to go through.
+     * Each subscriber is a {@link DecoupledSink} that copies into its capture on its own thread, so the writing thread
+     * only queues the bytes, and a capture that is busy (spilling to disk, being swapped) doesn't hold back the others.
+     * Subscribers are kept in an array that is replaced whenever one is added or removed, so writes never lock it.
+     */
+    private static class OutputStreamCombiner extends OutputStream {
+        private static final DecoupledSink[] NO_SUBSCRIBERS = new DecoupledSink[0];
+        private static final OutputStreamCombiner[] combiners = new OutputStreamCombiner[2];
+
+        private final byte type;
+        private final PrintStream printStream;
+        private volatile PrintStream original;
+        private volatile DecoupledSink[] subscribers = NO_SUBSCRIBERS;
+        // Open capture scopes, scoped writes are only looked for while there are any.
+        private volatile int scopes;
+
+        private OutputStreamCombiner(byte type) {
+            this.type = type;
+            this.printStream = new PrintStream(this, false, CONSOLE_CHARSET);
+        }
+
+        // The combiner for System.out (0) or System.err (1).
+        public static synchronized OutputStreamCombiner forStream(byte type) {
+            if (combiners[type] == null) combiners[type] = new OutputStreamCombiner(type);
+            return combiners[type];
+        }
+
+        /**
+         * Starts copying everything written to the stream into {@code subscriber}.
+         * The first subscriber installs the combiner, passing writes on to {@code original}.
+         */
+        public synchronized void subscribe(PrintStream original, DecoupledSink subscriber) {
+            DecoupledSink[] current = subscribers;
+            install(original);
+            DecoupledSink[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscriber;
+            subscribers = updated;
+        }
+
+        // Installs the combiner for a capture scope, which picks its own writes out in write().
+        public synchronized void attach(PrintStream original) {
+            install(original);
+            scopes++;
+        }
+
+        public synchronized void detach() {
+            scopes--;
+            uninstallIfUnused();
+        }
+
+        private void install(PrintStream original) {
+            if (subscribers.length > 0 || scopes > 0) return;
+            // A capturer made while installed was handed this combiner as its stream; keep the real one.
+            if (original != printStream) this.original = original;
+            if (type == 0) System.setOut(printStream);
+            if (type == 1) System.setErr(printStream);
+        }
+
+        private void uninstallIfUnused() {
+            if (subscribers.length > 0 || scopes > 0) return;
+            if (type == 0 && System.out == printStream) System.setOut(original);
+            if (type == 1 && System.err == printStream) System.setErr(original);
+        }
+
+        /**
+         * Stops copying writes into {@code subscriber}. Once nothing is subscribed, the original stream is put back,
+         * unless something else has replaced the combiner in the meantime.
+         */
+        public synchronized void unsubscribe(DecoupledSink subscriber) {
+            DecoupledSink[] current = subscribers;
+            int index = Arrays.asList(current).indexOf(subscriber);
+            if (index < 0) return;
+            DecoupledSink[] updated = new DecoupledSink[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, updated.length - index);
+            subscribers = (updated.length == 0) ? NO_SUBSCRIBERS : updated;
+            uninstallIfUnused();
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            original.write(b, off, len);
+            copy(b, off, len);
+        }
+
+        // Only to the captures, for writes that already went to the console another way.
+        public void copy(byte[] b, int off, int len){
+            for (DecoupledSink subscriber : subscribers) {
+                subscriber.write(b, off, len);
+            }
+            if (scopes > 0) {
+                try {
+                    CaptureScope.write(type, b, off, len);
+                } catch (IOException e) {
+                    // Captures are kept in memory, and don't throw.
+                }
+            }
+        }
+
+        // Waits until every capture of both streams has everything written so far.
+        public static void flushSubscribers(){
+            for (OutputStreamCombiner combiner : combiners) {
+                if (combiner == null) continue;
+                for (DecoupledSink subscriber : combiner.subscribers) {
+                    try {
+                        subscriber.flush();
+                    } catch (IOException e) {
+                        // Captures are kept in memory, and don't throw.
+                    }
+                }
+            }
+        }
+
+        /**
+         * {@link OutputStreamCombiner#flushSubscribers()} for when nothing can be allocated, waiting at most
+         * {@code timeoutMillis} for each capture. Returns false if one of them still had something queued.
+         */
+        public static boolean awaitSubscribers(long timeoutMillis){
+            boolean caughtUp = true;
+            for (OutputStreamCombiner combiner : combiners) {
+                if (combiner == null) continue;
+                for (DecoupledSink subscriber : combiner.subscribers) {
+                    caughtUp &= subscriber.awaitPassedOn(timeoutMillis);
+                }
+            }
+            return caughtUp;
+        }
+
+        public void flush() {
+            original.flush();
+        }
+
+        // The console itself is never closed.
+        public void close() {
+            flush();
+        }
+    }
+
+    /**
+     * Collects finished lines for both console streams in one buffer, and writes them with as few writes as possible.
+     * The buffer only ever holds lines for one of the streams: a line for the other stream writes out what is waiting
+     * first, which keeps {@link System#out} and {@link System#err} lines in the order they were logged.
+     * Lines are written once the buffer is full, every flush interval by the shared flusher thread, and right away at
+     * {@link Logger#LEVEL_ERR}, so errors are never left waiting when something goes wrong.
+     * <p>
+     * A capture scope only sees what its own thread writes, so threads inside one write straight through
+     * instead of leaving their lines to be written by another thread.
+     */
+    private static class ConsoleBatcher {
+        private final byte[] buffer;
+        private int count;
+        // Level of the stream the waiting lines are for, only LEVEL_ERR goes to System.err.
+        private boolean error;
+        private final ScheduledFuture<?> scheduledFlush;
+        // Held while writing to the console, which a virtual thread shouldn't do while pinned.
+        private final ReentrantLock lock = new ReentrantLock();
+
+        public ConsoleBatcher(int bufferSize, long flushIntervalMillis){
+            this.buffer = new byte[bufferSize];
+            this.scheduledFlush = Sink.getFlusher().scheduleWithFixedDelay(this::flush,
+                    flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        public void write(byte level, byte[] b, int off, int len){
+            boolean toError = level == LEVEL_ERR;
+            lock.lock();
+            try {
+                if (count > 0 && toError != error) drain();
+                error = toError;
+                if (toError || len > buffer.length - count || CaptureScope.current.get() != null) {
+                    drain();
+                    writeConsole(error, b, off, len);
+                    return;
+                }
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void flush(){
+            lock.lock();
+            try {
+                drain();
+                (error ? System.err : System.out).flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // For the emergency dump: gives up right away if another thread is writing, instead of waiting for it.
+        public void tryFlush(){
+            if (!lock.tryLock()) return;
+            try {
+                drain();
+                (error ? System.err : System.out).flush();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void drain(){
+            if (count == 0) return;
+            writeConsole(error, buffer, 0, count);
+            count = 0;
+        }
+
+        public void close(){
+            scheduledFlush.cancel(false);
+            flush();
+        }
+    }
+
+    /**
+     * Writes lines straight to the file descriptors of the process, for {@link Logger#enableDirectConsole()}.
+     * Each stream has its own lock. Lines are already encoded by the {@link LineEncoder}, so they are written from its
+     * array as they are. A {@link FileOutputStream} is used rather than its {@link FileChannel}: an interrupt during a
+     * channel write closes the channel, and with it standard out or error of the whole process.
+     * The streams are made once and never closed, for the same reason.
+     */
+    private static class DirectConsole {
+        private static final Target[] targets = {new Target(FileDescriptor.out), new Target(FileDescriptor.err)};
+
+        private static class Target {
+            private final FileOutputStream out;
+            private final ReentrantLock lock = new ReentrantLock();
+            private volatile boolean failed;
+
+            private Target(FileDescriptor descriptor){
+                this.out = new FileOutputStream(descriptor);
+            }
+        }
+
+        // Returns false if the line couldn't be written, and should go through the stream instead.
+        public boolean write(byte type, byte[] b, int off, int len){
+            Target target = targets[type];
+            if (target.failed) return false;
+            target.lock.lock();
+            try {
+                target.out.write(b, off, len);
+            } catch (IOException e) {
+                target.failed = true;
+                e.printStackTrace();
+                return false;
+            } finally {
+                target.lock.unlock();
+            }
+            // Lines that skip System.out still belong in every capture of it.
+            OutputStreamCombiner combiner = OutputStreamCombiner.combiners[type];
+            if (combiner != null) combiner.copy(b, off, len);
+            return true;
+        }
+    }
+
+    /**
+     * An output that can be shared between threads, used for the rolling file and the captures.
+     * By default, writes go straight through. Given a buffer size, writes are collected and passed on once the
+     * buffer is full, or every {@code flushIntervalMillis} by a shared background thread.
+     * Every sink has its own lock, so a sink that is busy writing only holds back writers of that sink.
+     */
+    private static class Sink {
+        private static ScheduledExecutorService flusher;
+
+        protected final OutputStream out;
+        private final byte[] buffer;
+        private int count;
+        private ScheduledFuture<?> scheduledFlush;
+
+        public Sink(OutputStream out, int bufferSize, long flushIntervalMillis){
+            this.out = out;
+            this.buffer = (bufferSize > 0) ? new byte[bufferSize] : null;
+            if (buffer != null && flushIntervalMillis > 0) {
+                scheduledFlush = getFlusher().scheduleWithFixedDelay(this::flushQuietly,
+                        flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private static synchronized ScheduledExecutorService getFlusher(){
+            if (flusher == null) {
+                flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "Logger-Sink-Flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return flusher;
+        }
+
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (buffer == null) {
+                out.write(b, off, len);
+                return;
+            }
+            if (len > buffer.length - count) {
+                drain();
+                // Too big to be worth buffering.
+                if (len >= buffer.length) {
+                    out.write(b, off, len);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        public synchronized void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        public void close() throws IOException {
+            if (scheduledFlush != null) scheduledFlush.cancel(false);
+            synchronized (this) {
+                drain();
+                out.close();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+
+        // Only what is in the buffer, never waits on a subclass. The flusher thread is shared.
+        private void flushQuietly(){
+            try {
+                synchronized (this) {
+                    drain();
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Nothing to report it to, the next write will fail the same way.
+            }
+        }
+    }
+
+    /**
+     * A {@link Sink} that writes on its own thread, so a slow output (a file on a busy disk, a capture that is spilling)
+     * never holds back the threads writing to it, or the console they write to first. Writers only copy their line into a ring of bytes.
+     * When the ring is full they either wait for room, or the line is dropped and counted, and a line saying how many
+     * were dropped is written once there is room again. The thread takes everything queued at once, and passes it on
+     * in one write, so the file still only ever gets whole lines.
+     */
+    private static class DecoupledSink extends Sink implements Runnable {
+        private final byte[] ring;
+        // What the thread took out of the ring last, written outside the lock.
+        private final byte[] batch;
+        private final boolean dropWhenFull;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition queued = lock.newCondition();
+        private final Condition progressed = lock.newCondition();
+        private final Thread thread;
+        // Bytes ever put into the ring, taken out of it, and passed on to the output. Only ever grow.
+        private volatile long put;
+        private long taken;
+        private volatile long passedOn;
+        private long dropped;
+        private long reportedDropped;
+        private boolean closed;
+
+        public DecoupledSink(OutputStream out, int bufferSize, long flushIntervalMillis, int maxQueuedBytes, boolean dropWhenFull, String name){
+            super(out, bufferSize, flushIntervalMillis);
+            this.ring = new byte[maxQueuedBytes];
+            this.batch = new byte[maxQueuedBytes];
+            this.dropWhenFull = dropWhenFull;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len){
+            lock.lock();
+            try {
+                if (closed) return;
+                // The thread can't wait for itself, whatever it writes (an error about the output) has to fit.
+                boolean own = Thread.currentThread() == thread;
+                if ((dropWhenFull || own) && len > ring.length - (put - taken)) {
+                    dropped++;
+                    return;
+                }
+                // A line bigger than the whole ring goes in as room is made.
+                while (len > 0) {
+                    while (put - taken == ring.length && !closed) progressed.awaitUninterruptibly();
+                    if (closed) return;
+                    int chunk = Math.min(len, ring.length - (int) (put - taken));
+                    int at = (int) (put % ring.length);
+                    int first = Math.min(chunk, ring.length - at);
+                    System.arraycopy(b, off, ring, at, first);
+                    System.arraycopy(b, off + first, ring, 0, chunk - first);
+                    put += chunk;
+                    off += chunk;
+                    len -= chunk;
+                    queued.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Waits until everything written so far has been passed on, then flushes the output.
+        @Override
+        public void flush() throws IOException {
+            lock.lock();
+            try {
+                long target = put;
+                while (passedOn < target && thread.isAlive()) progressed.awaitUninterruptibly();
+            } finally {
+                lock.unlock();
+            }
+            super.flush();
+        }
+
+        // Waits for what was written so far without locking or allocating, polling every millisecond.
+        public boolean awaitPassedOn(long timeoutMillis){
+            long target = put;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (passedOn < target && thread.isAlive()) {
+                if (System.nanoTime() - deadline >= 0) return false;
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            return true;
+        }
+
+        // Writes out everything still queued, then closes the output.
+        @Override
+        public void close() throws IOException {
+            lock.lock();
+            try {
+                closed = true;
+                queued.signal();
+                progressed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.close();
+        }
+
+        public void run(){
+            while (true) {
+                int length;
+                long lost;
+                lock.lock();
+                try {
+                    while (put == taken && !closed) queued.awaitUninterruptibly();
+                    if (put == taken) return;
+                    length = (int) (put - taken);
+                    int at = (int) (taken % ring.length);
+                    int first = Math.min(length, ring.length - at);
+                    System.arraycopy(ring, at, batch, 0, first);
+                    System.arraycopy(ring, 0, batch, first, length - first);
+                    taken = put;
+                    lost = dropped - reportedDropped;
+                    reportedDropped = dropped;
+                    // Room was made, writers can go on while the batch is written.
+                    progressed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    super.write(batch, 0, length);
+                    if (lost > 0) {
+                        byte[] line = ("Rolling file couldn't keep up, " + lost + " lines were dropped." + System.lineSeparator()).getBytes(CONSOLE_CHARSET);
+                        super.write(line, 0, line.length);
+                    }
+                } catch (IOException e) {
+                    // The output is broken, keep draining so writers never stall on it.
+                }
+                lock.lock();
+                try {
+                    passedOn += length;
+                    progressed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends to a numbered series of files, starting a new file by size or by time.
+     * Only ever gets whole lines, so a line is never split across two files.
+     */
+    private static class RollingFileAppender extends OutputStream {
+        private final Path directory;
+        private final String baseName;
+        private final long maxBytes;
+        private final long rotateMillis;
+        private final int maxFiles;
+        private FileChannel channel;
+        private int sequence;
+        private long size;
+        private long openedAt;
+        private boolean failed;
+
+        public RollingFileAppender(Path directory, String baseName, long maxBytes, long rotateMillis, int maxFiles) throws IOException {
+            this.directory = directory;
+            this.baseName = baseName;
+            this.maxBytes = maxBytes;
+            this.rotateMillis = rotateMillis;
+            this.maxFiles = maxFiles;
+            this.sequence = highestSequence();
+            open();
+        }
+
+        private Path file(int sequence){
+            return directory.resolve(baseName + "-" + String.format("%06d", sequence) + ".log");
+        }
+
+        // Sequence number of a file in this series, or -1.
+        private int sequenceOf(Path file){
+            String name = file.getFileName().toString();
+            String prefix = baseName + "-";
+            if (!name.startsWith(prefix) || name.length() < prefix.length() + 6) return -1;
+            String number = name.substring(prefix.length(), prefix.length() + 6);
+            String extension = name.substring(prefix.length() + 6);
+            // Compressed files still count, files that are being compressed don't.
+            if (!extension.equals(".log") && !extension.equals(".log.gz")) return -1;
+            for (int i = 0; i < number.length(); i++) {
+                if (!Character.isDigit(number.charAt(i))) return -1;
+            }
+            return Integer.parseInt(number);
+        }
+
+        private List<Path> existingFiles() throws IOException {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, baseName + "-*")) {
+                for (Path file : stream) {
+                    if (sequenceOf(file) >= 0) files.add(file);
+                }
+            }
+            files.sort((a, b) -> Integer.compare(sequenceOf(a), sequenceOf(b)));
+            return files;
+        }
+
+        private int highestSequence() throws IOException {
+            List<Path> files = existingFiles();
+            return files.isEmpty() ? 0 : sequenceOf(files.get(files.size() - 1));
+        }
+
+        private void open() throws IOException {
+            sequence++;
+            channel = FileChannel.open(file(sequence), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            size = channel.size();
+            openedAt = System.currentTimeMillis();
+            deleteOldFiles();
+        }
+
+        private void rotate() throws IOException {
+            channel.close();
+            finished(file(sequence));
+            open();
+        }
+
+        private void deleteOldFiles() throws IOException {
+            if (maxFiles <= 0) return;
+            List<Path> files = existingFiles();
+            for (int i = 0; i < files.size() - maxFiles; i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (channel == null) return;
+            try {
+                if (rotateMillis > 0 && System.currentTimeMillis() - openedAt >= rotateMillis) rotate();
+                // Goes through the chunk line by line, starting a new file right before the line that doesn't fit.
+                int start = off;
+                int end = off + len;
+                int position = off;
+                while (position < end) {
+                    int lineEnd = position;
+                    while (lineEnd < end && b[lineEnd++] != '\n');
+                    long pending = size + (position - start);
+                    if (maxBytes > 0 && pending > 0 && pending + (lineEnd - position) > maxBytes) {
+                        writeFully(b, start, position - start);
+                        rotate();
+                        start = position;
+                    }
+                    position = lineEnd;
+                }
+                writeFully(b, start, end - start);
+                failed = false;
+            } catch (IOException e) {
+                if (!failed) {
+                    // Only report it once, and not through the logger, or it would end up right back here.
+                    System.err.println("Failed to write to the rolling file: " + e);
+                    failed = true;
+                }
+                throw e;
+            }
+        }
+
+        private void writeFully(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer);
+            }
+        }
+
+        public synchronized void close() throws IOException {
+            if (channel == null) return;
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Striped counters behind {@link LoggerMetrics}. Recording only ever touches a {@link LongAdder} cell,
+     * the sums are only worked out when they are read.
+     */
+    private static class Metrics implements LoggerMetrics {
+        private static final ObjectName NAME = objectName("com.github.malthelegend104.logger:type=LoggerMetrics");
+        private static final long[] DUMP_BUCKETS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, Long.MAX_VALUE};
+        private final LongAdder[] lines = newAdders(4);
+        private final LongAdder[] bytes = newAdders(4);
+        private final LongAdder[] dumpHistogram = newAdders(DUMP_BUCKETS_MILLIS.length);
+        private final LongAdder dumps = new LongAdder();
+        private final LongAdder failedDumps = new LongAdder();
+        private final LongAdder dumpNanos = new LongAdder();
+        private final LongAccumulator dumpMaxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder suppressed = new LongAdder();
+
+        private static LongAdder[] newAdders(int count){
+            LongAdder[] adders = new LongAdder[count];
+            for (int i = 0; i < count; i++) adders[i] = new LongAdder();
+            return adders;
+        }
+
+        private static ObjectName objectName(String name){
+            try {
+                return new ObjectName(name);
+            } catch (JMException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void lineWritten(byte level, int length){
+            lines[level].increment();
+            bytes[level].add(length);
+        }
+
+        public void dumpFinished(long nanos, boolean succeeded){
+            (succeeded ? dumps : failedDumps).increment();
+            dumpNanos.add(nanos);
+            dumpMaxNanos.accumulate(nanos);
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (millis > DUMP_BUCKETS_MILLIS[bucket]) bucket++;
+            dumpHistogram[bucket].increment();
+        }
+
+        public long getLogLines(){
+            return lines[LEVEL_LOG].sum();
+        }
+
+        public long getInfoLines(){
+            return lines[LEVEL_INFO].sum();
+        }
+
+        public long getWarnLines(){
+            return lines[LEVEL_WARN].sum();
+        }
+
+        public long getErrLines(){
+            return lines[LEVEL_ERR].sum();
+        }
+
+        public long getLogBytes(){
+            return bytes[LEVEL_LOG].sum();
+        }
+
+        public long getInfoBytes(){
+            return bytes[LEVEL_INFO].sum();
+        }
+
+        public long getWarnBytes(){
+            return bytes[LEVEL_WARN].sum();
+        }
+
+        public long getErrBytes(){
+            return bytes[LEVEL_ERR].sum();
+        }
+
+        public Map<String, Long> getCapturedBytes(){
+            Map<String, Long> result = new TreeMap<>();
+            synchronized (capturers) {
+                capturers.forEach((capturer, name) -> result.put(name, capturer.getCaptureBuffer().size()));
+            }
+            return result;
+        }
+
+        public long getDumpCount(){
+            return dumps.sum();
+        }
+
+        public long getFailedDumpCount(){
+            return failedDumps.sum();
+        }
+
+        public long getDumpTotalMillis(){
+            return TimeUnit.NANOSECONDS.toMillis(dumpNanos.sum());
+        }
+
+        public long getDumpMaxMillis(){
+            return TimeUnit.NANOSECONDS.toMillis(dumpMaxNanos.get());
+        }
+
+        public long[] getDumpDurationBucketsMillis(){
+            return DUMP_BUCKETS_MILLIS.clone();
+        }
+
+        public long[] getDumpDurationHistogram(){
+            long[] result = new long[dumpHistogram.length];
+            for (int i = 0; i < result.length; i++) result[i] = dumpHistogram[i].sum();
+            return result;
+        }
+
+        public long getDroppedMessages(){
+            return dropped.sum();
+        }
+
+        public long getSuppressedMessages(){
+            return suppressed.sum();
+        }
+    }
+
+    /**
+     * Compresses finished log files with gzip on a single low priority background thread.
+     * Keeps count of the files that are queued or being compressed, so shutdown can wait for them.
+     */
+    private static class FileCompressor {
+        private final ExecutorService executor;
+        private int pending;
+
+        public FileCompressor(){
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Logger-Compressor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+
+        public void submit(Path file){
+            synchronized (this) {
+                pending++;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        compress(file);
+                    } finally {
+                        done();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                done();
+            }
+        }
+
+        private synchronized void done(){
+            pending--;
+            notifyAll();
+        }
+
+        public synchronized boolean await(long timeoutMillis){
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (pending > 0) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) return false;
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Writes file.gz next to the file, then deletes the file. A partly written .gz is never left under the final name.
+        private static void compress(Path file){
+            Path target = file.resolveSibling(file.getFileName() + ".gz");
+            Path part = file.resolveSibling(file.getFileName() + ".gz.part");
+            try {
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(part), 64 * 1024)) {
+                    Files.copy(file, out);
+                }
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+                Files.delete(file);
+            } catch (NoSuchFileException e) {
+                // Deleted before it could be compressed, for example by the rolling file limit.
+                deleteQuietly(part);
+            } catch (IOException e) {
+                deleteQuietly(part);
+                Logger.log("Failed to compress " + file);
+                e.printStackTrace();
+            }
+        }
+
+        private static void deleteQuietly(Path file){
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Nothing else to do with it.
+            }
+        }
+    }
+
+    /**
+     * Builds a whole line as bytes, ready to be written to a stream in one call.
+     * Every thread has its own, so building a line never allocates once the buffer has grown big enough.
+     * Numbers are written digit by digit; doubles and floats go through a reused {@link StringBuilder}.
+     */
+    private static class LineEncoder {
+        private static final int MAX_KEPT_SIZE = 64 * 1024;
+        private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] TIME_END = "]\t".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] RESET = CONSOLE_COLOR_RESET.getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JSON_TIMESTAMP = "{\"timestamp\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JSON_LEVEL = "\",\"level\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JSON_THREAD = "\",\"thread\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JSON_CATEGORY = "\",\"category\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JSON_MESSAGE = "\",\"message\":\"".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] JSON_END = "\"}".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[][] LEVEL_NAMES = {
+                "LOG".getBytes(StandardCharsets.US_ASCII),
+                "INFO".getBytes(StandardCharsets.US_ASCII),
+                "WARN".getBytes(StandardCharsets.US_ASCII),
+                "ERR".getBytes(StandardCharsets.US_ASCII)
+        };
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        private static final double[] DECIMAL_SCALES = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+        private byte[] bytes = new byte[256];
+        private int length;
+        // Whether the current line is JSON, so everything appended is escaped.
+        private boolean json;
+        // Where the line starts and ends without the colors.
+        private int textStart;
+        private int textEnd;
+        private final StringBuilder decimals = new StringBuilder(32);
+        // Set from begin() until the line is written, while logging from inside the line needs an encoder of its own.
+        private boolean busy;
+
+        // Color, then the time in brackets, then the category name if there is one.
+        // For JSON, everything up to the start of the message.
+        public void begin(Category category, byte level, long epochNanos, Thread thread){
+            busy = true;
+            length = 0;
+            json = outputFormat == FORMAT_JSON;
+            if (json) {
+                textStart = 0;
+                appendBytes(JSON_TIMESTAMP);
+                appendIsoTime(epochNanos);
+                appendBytes(JSON_LEVEL);
+                appendBytes(LEVEL_NAMES[level]);
+                appendBytes(JSON_THREAD);
+                append(thread.getName());
+                if (category.prefix != null) {
+                    appendBytes(JSON_CATEGORY);
+                    append(category.name);
+                }
+                appendBytes(JSON_MESSAGE);
+                return;
+            }
+            appendBytes(colorBytes[level]);
+            textStart = length;
+            appendByte((byte) '[');
+            timestamps.writeTo(this, epochNanos);
+            appendBytes(TIME_END);
+            if (category.prefix != null) appendBytes(category.prefix);
+        }
+
+        public void end(){
+            if (json) {
+                appendBytes(JSON_END);
+                textEnd = length;
+            } else {
+                textEnd = length;
+                appendBytes(RESET);
+            }
+            appendBytes(LINE_SEPARATOR);
+        }
+
+        public int textStart(){
+            return textStart;
+        }
+
+        // The line without colors, but with the line separator.
+        public int textLength(){
+            // Moves the separator up against the text, the colored line has already been written.
+            System.arraycopy(LINE_SEPARATOR, 0, bytes, textEnd, LINE_SEPARATOR.length);
+            return textEnd + LINE_SEPARATOR.length - textStart;
+        }
+
+        public byte[] bytes(){
+            return bytes;
+        }
+
+        public int length(){
+            return length;
+        }
+
+        // Lets the next line use the encoder. Drops the buffer if one huge line made it grow too much.
+        public void release(){
+            busy = false;
+            if (bytes.length > MAX_KEPT_SIZE) bytes = new byte[256];
+        }
+
+        private void ensure(int extra){
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+
+        public void appendByte(byte b){
+            ensure(1);
+            bytes[length++] = b;
+        }
+
+        public void appendBytes(byte[] b){
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        public void append(String text){
+            if (text == null) text = "null";
+            appendRange(text, 0, text.length());
+        }
+
+        // Objects, suppliers and formats.
+        @SuppressWarnings("unchecked")
+        public void appendLazy(byte kind, String format, int argCount, Object first, Object second, Object[] rest){
+            if (kind == KIND_OBJECT) {
+                append(String.valueOf(first));
+            } else if (kind == KIND_SUPPLIER) {
+                append(((Supplier<String>) first).get());
+            } else {
+                appendFormat(format, argCount, first, second, rest);
+            }
+        }
+
+        // Replaces each {} with the next argument. Extra {}'s are left as they are.
+        private void appendFormat(String format, int argCount, Object first, Object second, Object[] rest){
+            if (format == null) {
+                append(null);
+                return;
+            }
+            if (rest != null) argCount = rest.length;
+            int used = 0;
+            int from = 0;
+            int at;
+            while (used < argCount && (at = format.indexOf("{}", from)) >= 0) {
+                appendRange(format, from, at);
+                Object arg = (rest != null) ? rest[used] : (used == 0) ? first : second;
+                append(String.valueOf(arg));
+                used++;
+                from = at + 2;
+            }
+            appendRange(format, from, format.length());
+        }
+
+        private void appendRange(String text, int from, int to){
+            if (json) {
+                for (int i = from; i < to; i++) appendEscaped(text.charAt(i));
+                return;
+            }
+            ensure(to - from);
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80 && (c >= 0x100 || !LATIN_1_CONSOLE)) {
+                    // Not ASCII, let the charset handle the rest.
+                    appendBytes(text.substring(i, to).getBytes(CONSOLE_CHARSET));
+                    return;
+                }
+                bytes[length++] = (byte) c;
+            }
+        }
+
+        public void appendNumber(byte kind, long number){
+            if (kind == KIND_BOOLEAN) {
+                appendBytes(number != 0 ? TRUE : FALSE);
+            } else if (kind == KIND_CHAR) {
+                if (json) {
+                    appendEscaped((char) number);
+                } else if (number < 0x80 || (LATIN_1_CONSOLE && number < 0x100)) {
+                    appendByte((byte) number);
+                } else {
+                    appendBytes(String.valueOf((char) number).getBytes(CONSOLE_CHARSET));
+                }
+            } else {
+                appendLong(number);
+            }
+        }
+
+        public void appendDecimal(byte kind, double decimal){
+            if (appendShortDecimal(kind, decimal)) return;
+            decimals.setLength(0);
+            if (kind == KIND_FLOAT) {
+                decimals.append((float) decimal);
+            } else {
+                decimals.append(decimal);
+            }
+            int size = decimals.length();
+            ensure(size);
+            for (int i = 0; i < size; i++) {
+                bytes[length++] = (byte) decimals.charAt(i);
+            }
+        }
+
+        /*
+         * Most decimals that are logged are short, like 0.25 or 1.1. Newer JDKs allocate for every double appended to a
+         * StringBuilder, so those are written here instead, the same way Double.toString() and Float.toString() would.
+         * Any decimal with at most 15 digits (6 for floats) is the only one of that length that rounds to its double,
+         * so the fewest digits that round back to the same value are what toString() prints.
+         * Only for the range toString() doesn't use an exponent for, anything else returns false.
+         */
+        private boolean appendShortDecimal(byte kind, double decimal){
+            double value = Math.abs(decimal);
+            if (!(value >= 1e-3 && value < 1e7)) return false;
+            boolean isFloat = kind == KIND_FLOAT;
+            long maxDigits = isFloat ? 1_000_000L : 1_000_000_000_000_000L;
+            for (int scale = 0; scale < DECIMAL_SCALES.length; scale++) {
+                double scaled = value * DECIMAL_SCALES[scale];
+                if (scaled >= maxDigits) return false;
+                long digits = Math.round(scaled);
+                double back = digits / DECIMAL_SCALES[scale];
+                if (isFloat ? (float) back != (float) value : back != value) continue;
+                long unit = (long) DECIMAL_SCALES[scale];
+                ensure(scale + 22);
+                if (decimal < 0) bytes[length++] = '-';
+                appendLong(digits / unit);
+                bytes[length++] = '.';
+                if (scale == 0) {
+                    bytes[length++] = '0';
+                    return true;
+                }
+                long fraction = digits % unit;
+                for (long place = unit / 10; place > 0; place /= 10) {
+                    bytes[length++] = (byte) ('0' + (fraction / place) % 10);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        public void appendLong(long number){
+            if (number == Long.MIN_VALUE) {
+                appendBytes(MIN_LONG);
+                return;
+            }
+            ensure(20);
+            if (number < 0) {
+                bytes[length++] = '-';
+                number = -number;
+            }
+            int digits = 1;
+            for (long rest = number / 10; rest > 0; rest /= 10) digits++;
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + number % 10);
+                number /= 10;
+            }
+            length += digits;
+        }
+
+        // JSON string content: printable ASCII as it is, everything else escaped.
+        private void appendEscaped(char c){
+            if (c >= 0x20 && c < 0x7F && c != '"' && c != '\\') {
+                ensure(1);
+                bytes[length++] = (byte) c;
+                return;
+            }
+            ensure(6);
+            bytes[length++] = '\\';
+            switch (c) {
+                case '"' -> bytes[length++] = '"';
+                case '\\' -> bytes[length++] = '\\';
+                case '\n' -> bytes[length++] = 'n';
+                case '\r' -> bytes[length++] = 'r';
+                case '\t' -> bytes[length++] = 't';
+                default -> {
+                    bytes[length++] = 'u';
+                    bytes[length++] = HEX[(c >> 12) & 0xF];
+                    bytes[length++] = HEX[(c >> 8) & 0xF];
+                    bytes[length++] = HEX[(c >> 4) & 0xF];
+                    bytes[length++] = HEX[c & 0xF];
+                }
+            }
+        }
+
+        // yyyy-MM-ddTHH:mm:ss.SSSZ in UTC, worked out from the day number so no date objects are needed.
+        private void appendIsoTime(long epochNanos){
+            long seconds = Math.floorDiv(epochNanos, 1_000_000_000L);
+            int millis = (int) (Math.floorMod(epochNanos, 1_000_000_000L) / 1_000_000);
+            int secondOfDay = (int) Math.floorMod(seconds, 86400L);
+            // Days since 0000-03-01, so leap days fall at the end of each year.
+            long days = Math.floorDiv(seconds, 86400L) + 719468;
+            long era = Math.floorDiv(days, 146097);
+            int dayOfEra = (int) (days - era * 146097);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            int month = (shiftedMonth < 10) ? shiftedMonth + 3 : shiftedMonth - 9;
+            long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+            appendDigits((int) year, 4);
+            appendByte((byte) '-');
+            appendDigits(month, 2);
+            appendByte((byte) '-');
+            appendDigits(day, 2);
+            appendByte((byte) 'T');
+            appendDigits(secondOfDay / 3600, 2);
+            appendByte((byte) ':');
+            appendDigits(secondOfDay / 60 % 60, 2);
+            appendByte((byte) ':');
+            appendDigits(secondOfDay % 60, 2);
+            appendByte((byte) '.');
+            appendDigits(millis, 3);
+            appendByte((byte) 'Z');
+        }
+
+        // Writes exactly {@code digits} digits, padding with zeros.
+        public void appendDigits(int number, int digits){
+            ensure(digits);
+            for (int i = length + digits - 1; i >= length; i--) {
+                bytes[i] = (byte) ('0' + number % 10);
+                number /= 10;
+            }
+            length += digits;
+        }
+    }
+
+    /**
+     * Multi producer, single consumer ring buffer used for async logging.
+     * Producers claim a sequence number, fill the preallocated slot, and publish it.
+     * A single writer thread drains the slots in order and writes them to the current streams.
+     */
+    private static class AsyncWriter implements Runnable {
+        private final Event[] ring;
+        private final int mask;
+        private final byte fullPolicy;
+        // Sequence published in each slot, -1 if none has been yet.
+        private final AtomicLongArray published;
+        // Next sequence a producer can claim.
+        private final AtomicLong claimed = new AtomicLong();
+        private final LongAdder dropped = new LongAdder();
+        private final Thread thread;
+        // Handed out instead of a real slot when a message is dropped.
+        private static final Event DROPPED = new Event();
+        // Every sequence below this has been written, and its slot can be reused.
+        private volatile long consumed;
+        private volatile boolean running = true;
+        private volatile boolean sleeping;
+        private long reportedDropped;
+
+        public AsyncWriter(int capacity, byte fullPolicy){
+            int size = Integer.highestOneBit(capacity - 1) << 1;
+            this.ring = new Event[size];
+            for (int i = 0; i < size; i++) ring[i] = new Event();
+            this.mask = size - 1;
+            this.fullPolicy = fullPolicy;
+            this.published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) published.set(i, -1);
+            this.thread = new Thread(this, "Logger-Async-Writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        // How many slots may be in use before a message of the given level is rejected.
+        private int limitFor(byte level){
+            int capacity = ring.length;
+            if (fullPolicy != ASYNC_DROP_LOWEST_LEVEL || level >= LEVEL_ERR) return capacity;
+            if (level == LEVEL_WARN) return capacity - (capacity >> 4);
+            if (level == LEVEL_INFO) return capacity - (capacity >> 3);
+            return capacity - (capacity >> 2);
+        }
+
+        /**
+         * Claims the next slot in the queue for a message. The caller fills in the message, then calls
+         * {@link AsyncWriter#publish(Event)}.
+         * @return null if the writer has been shut down, or the writer itself is logging from inside a message it is
+         * writing, and the caller should write the message itself. Queueing it could wait on a slot only this thread frees.
+         */
+        public Event claim(Category category, byte level, byte kind, long time){
+            if (Thread.currentThread() == thread) return null;
+            int limit = limitFor(level);
+            long sequence;
+            while (true) {
+                if (!running) return null;
+                sequence = claimed.get();
+                if (sequence - consumed >= limit) {
+                    if (fullPolicy == ASYNC_BLOCK) {
+                        LockSupport.unpark(thread);
+                        LockSupport.parkNanos(10_000L);
+                        continue;
+                    }
+                    dropped.increment();
+                    Metrics counters = metrics;
+                    if (counters != null) counters.dropped.increment();
+                    return DROPPED;
+                }
+                if (claimed.compareAndSet(sequence, sequence + 1)) break;
+            }
+            Event event = ring[(int) (sequence & mask)];
+            event.sequence = sequence;
+            event.category = category;
+            event.level = level;
+            event.kind = kind;
+            event.time = time;
+            event.thread = Thread.currentThread();
+            return event;
+        }
+
+        public void publish(Event event){
+            if (event == DROPPED) {
+                event.clear();
+                return;
+            }
+            published.set((int) (event.sequence & mask), event.sequence);
+            if (sleeping) LockSupport.unpark(thread);
+        }
+
+        public long getDropped(){
+            return dropped.sum();
+        }
+
+        // Blocks until everything claimed before this call has been written.
+        public void awaitDrained(){
+            if (Thread.currentThread() == thread) return;
+            long target = claimed.get();
+            while (consumed < target && thread.isAlive()) {
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(100_000L);
+            }
+        }
+
+        // Stops accepting messages and waits until the queue is drained.
+        public void shutdown(){
+            running = false;
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() == thread) return;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void run(){
+            long next = consumed;
+            boolean lastCheck = false;
+            while (true) {
+                int index = (int) (next & mask);
+                if (published.get(index) == next) {
+                    Event event = ring[index];
+                    LineEncoder encoder = encoder();
+                    try {
+                        encoder.begin(event.category, event.level, event.time, event.thread);
+                        event.appendTo(encoder);
+                        write(event.level, encoder);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    } finally {
+                        encoder.release();
+                    }
+                    event.clear();
+                    consumed = ++next;
+                    lastCheck = false;
+                    continue;
+                }
+                reportDropped();
+                if (!running && claimed.get() == next) {
+                    // A producer may have passed the running check right before shutdown; give it one more chance.
+                    if (lastCheck) break;
+                    lastCheck = true;
+                    LockSupport.parkNanos(1_000_000L);
+                    continue;
+                }
+                sleeping = true;
+                if (published.get(index) != next && running) LockSupport.parkNanos(this, 1_000_000L);
+                sleeping = false;
+            }
+            ConsoleBatcher batcher = consoleBatcher;
+            if (batcher != null) batcher.flush();
+            System.out.flush();
+            System.err.flush();
+        }
+
+        private void reportDropped(){
+            long total = dropped.sum();
+            if (total == reportedDropped) return;
+            writeText(LEVEL_WARN, now(), "Async queue was full, " + (total - reportedDropped) + " messages were dropped.");
+            reportedDropped = total;
+        }
+
+        // A preallocated slot in the ring.
+        private static class Event {
+            private long sequence;
+            private Category category;
+            private byte level;
+            private byte kind;
+            private long time;
+            private Thread thread;
+            // Text, or the format of a format message.
+            private String message;
+            // Integers, chars and booleans, or the argument count of a format message.
+            private long number;
+            private double decimal;
+            // Objects, suppliers and format arguments.
+            private Object first;
+            private Object second;
+            private Object[] rest;
+
+            private void appendTo(LineEncoder encoder){
+                if (kind == KIND_TEXT) {
+                    encoder.append(message);
+                } else if (kind == KIND_DOUBLE || kind == KIND_FLOAT) {
+                    encoder.appendDecimal(kind, decimal);
+                } else if (kind >= KIND_OBJECT) {
+                    encoder.appendLazy(kind, message, (int) number, first, second, rest);
+                } else {
+                    encoder.appendNumber(kind, number);
+                }
+            }
+
+            // Lets go of any references, so queued objects can be collected once written.
+            private void clear(){
+                thread = null;
+                message = null;
+                first = null;
+                second = null;
+                rest = null;
+            }
+        }
+    }
+
+    /**
+     * Where a message was logged from: the first frame on the stack outside of the logger.
+     * Told apart down to the bytecode, so two calls on one line are two call sites.
+     */
+    private static final class CallSite {
+        private static final StackWalker walker = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+        private final StackWalker.StackFrame frame;
+        private final int hash;
+
+        private CallSite(StackWalker.StackFrame frame){
+            this.frame = frame;
+            this.hash = (frame.getDeclaringClass().hashCode() * 31 + frame.getMethodName().hashCode()) * 31 + frame.getByteCodeIndex();
+        }
+
+        // Null if the logger was called by itself, which only happens for its own summary lines.
+        public static CallSite find(){
+            return walker.walk(frames -> frames
+                    .filter(frame -> frame.getDeclaringClass().getNestHost() != Logger.class)
+                    .findFirst()
+                    .map(CallSite::new)
+                    .orElse(null));
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if (!(o instanceof CallSite other)) return false;
+            return frame.getDeclaringClass() == other.frame.getDeclaringClass()
+                    && frame.getByteCodeIndex() == other.frame.getByteCodeIndex()
+                    && frame.getMethodName().equals(other.frame.getMethodName())
+                    && frame.getDescriptor().equals(other.frame.getDescriptor());
+        }
+
+        @Override
+        public int hashCode(){
+            return hash;
+        }
+
+        @Override
+        public String toString(){
+            return frame.toStackTraceElement().toString();
+        }
+    }
+
+    /**
+     * Token buckets for rate limiting, one for every kind of message, for every level.
+     * Each bucket is a single number: the time at which it is empty again. Letting a message through moves that time
+     * forward by one interval with a compare and set, and a message is dropped when that time is more than a burst ahead
+     * of now. Dropping a message only reads that number and counts it, nothing is locked or formatted.
+     * <p>
+     * A bucket that has filled up again is let go of by setting that number to {@link Bucket#RETIRED} with a compare and
+     * set, so a message either gets its token before that or sees it and takes a new bucket. A count added while the
+     * bucket was being let go of is seen either by the message, which takes it back, or by the reporter, which keeps the bucket.
+     */
+    private static class RateLimiter {
+        // Past this many kinds of messages, new ones share one bucket per level until idle ones are let go of, once a second.
+        private static final int MAX_KEYS = 4096;
+        private static final long REPORT_INTERVAL_MILLIS = 1000;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final Map<Object, Bucket>[] buckets = new Map[4];
+        // For messages that came after MAX_KEYS, never let go of.
+        private final Bucket[] overflow = new Bucket[4];
+        private final AtomicInteger keys = new AtomicInteger();
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final LongAdder suppressed = new LongAdder();
+        private final ScheduledExecutorService reporter;
+
+        public RateLimiter(double messagesPerSecond, int burst){
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new ConcurrentHashMap<>();
+                overflow[i] = new Bucket(ROOT, (byte) i, "Messages from more than " + MAX_KEYS + " places");
+            }
+            this.intervalNanos = Math.max(1, (long) (1_000_000_000L / messagesPerSecond));
+            this.burstNanos = intervalNanos * (burst - 1);
+            this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Logger-Rate-Limiter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleWithFixedDelay(this::report, REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Whether a message may be written. A null key, the logger's own lines, is never limited.
+         * The template is only kept to be shown in the summary line, messages keyed by call site add where they are from.
+         */
+        public boolean tryAcquire(Category category, byte level, Object key, String template){
+            if (key == null) return true;
+            while (true) {
+                Bucket bucket = bucket(category, level, key, template);
+                long now = System.nanoTime();
+                long emptyAt;
+                while ((emptyAt = bucket.emptyAt.get()) != Bucket.RETIRED) {
+                    long start = (emptyAt - now > 0) ? emptyAt : now;
+                    if (start - now > burstNanos) {
+                        bucket.suppressed.incrementAndGet();
+                        if (bucket.emptyAt.get() == Bucket.RETIRED) {
+                            // Let go of while counting, the reporter may not have seen it.
+                            bucket.suppressed.decrementAndGet();
+                            break;
+                        }
+                        suppressed.increment();
+                        Metrics counters = metrics;
+                        if (counters != null) counters.suppressed.increment();
+                        return false;
+                    }
+                    if (bucket.emptyAt.compareAndSet(emptyAt, start + intervalNanos)) return true;
+                }
+                // Being let go of, it is out of the map in a moment.
+                Thread.onSpinWait();
+            }
+        }
+
+        private Bucket bucket(Category category, byte level, Object key, String template){
+            Bucket bucket = buckets[level].get(key);
+            if (bucket != null) return bucket;
+            if (keys.get() >= MAX_KEYS) return overflow[level];
+            return buckets[level].computeIfAbsent(key, k -> {
+                keys.incrementAndGet();
+                String shown = (k instanceof CallSite) ? ((template == null) ? "" : template + " ") + "at " + k : template;
+                return new Bucket(category, level, shown);
+            });
+        }
+
+        public long getSuppressed(){
+            return suppressed.sum();
+        }
+
+        // Writes a summary line for every bucket that dropped something since the last one, then lets go of idle buckets.
+        private void report(){
+            for (Map<Object, Bucket> map : buckets) {
+                for (Bucket bucket : map.values()) report(bucket);
+            }
+            for (Bucket bucket : overflow) report(bucket);
+            evictIdle();
+        }
+
+        private static void report(Bucket bucket){
+            long count = bucket.suppressed.getAndSet(0);
+            if (count == 0) return;
+            String line = "Last message repeated " + count + " times";
+            emitText(bucket.category, bucket.level, (bucket.template == null) ? line + "." : line + ": " + bucket.template);
+        }
+
+        // A bucket that has filled up again is the same as a new one, so it can be made again when it is next needed.
+        private void evictIdle(){
+            long now = System.nanoTime();
+            for (Map<Object, Bucket> map : buckets) {
+                for (Map.Entry<Object, Bucket> entry : map.entrySet()) {
+                    Bucket bucket = entry.getValue();
+                    long emptyAt = bucket.emptyAt.get();
+                    if (emptyAt - now > 0 || bucket.suppressed.get() != 0) continue;
+                    if (!bucket.emptyAt.compareAndSet(emptyAt, Bucket.RETIRED)) continue;
+                    if (bucket.suppressed.get() != 0) {
+                        // Counted in between, whoever counted it may not have seen it retired.
+                        bucket.emptyAt.set(emptyAt);
+                        continue;
+                    }
+                    map.remove(entry.getKey(), bucket);
+                    keys.decrementAndGet();
+                }
+            }
+        }
+
+        public void shutdown(){
+            reporter.shutdown();
+            try {
+                reporter.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            report();
+        }
+
+        private static class Bucket {
+            // Never a real time, a bucket that has been let go of.
+            private static final long RETIRED = Long.MIN_VALUE;
+            private final Category category;
+            private final byte level;
+            private final String template;
+            // System.nanoTime() at which every token has been used up again, the start is always in the past.
+            private final AtomicLong emptyAt = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+            private final AtomicLong suppressed = new AtomicLong();
+
+            private Bucket(Category category, byte level, String template){
+                this.category = category;
+                this.level = level;
+                this.template = template;
+            }
+        }
+    }
+
+    /**
+     * Formats the time shown in front of every message.
+     * The part of the time that only changes once a second is formatted once and cached,
+     * so most calls only have to fill in the fraction of a second.
+     * Instances are swapped as a whole whenever the format changes, so readers never need a lock.
+     */
+    private static class TimestampEngine {
+        private final DateTimeFormatter head;
+        private final DateTimeFormatter tail;
+        private final int fractionDigits;
+        // False for custom formats that show more than seconds; those are formatted in full every time.
+        private final boolean cacheable;
+        private volatile Second cached = new Second(Long.MIN_VALUE, "", "");
+
+        // Predefined format: head, then the fraction of a second, then the tail.
+        public TimestampEngine(String headPattern, String tailPattern, int fractionDigits){
+            this.head = DateTimeFormatter.ofPattern(headPattern);
+            this.tail = (tailPattern == null) ? null : DateTimeFormatter.ofPattern(tailPattern);
+            this.fractionDigits = fractionDigits;
+            this.cacheable = true;
+        }
+
+        // Custom format, only cached if it looks the same for the whole second.
+        public TimestampEngine(DateTimeFormatter formatter){
+            this(formatter, null, 0, isSecondPrecision(formatter));
+        }
+
+        private TimestampEngine(DateTimeFormatter head, DateTimeFormatter tail, int fractionDigits, boolean cacheable){
+            this.head = head;
+            this.tail = tail;
+            this.fractionDigits = fractionDigits;
+            this.cacheable = cacheable;
+        }
+
+        private static boolean isSecondPrecision(DateTimeFormatter formatter){
+            ZonedDateTime start = ZonedDateTime.now(clock).withNano(0);
+            try {
+                return formatter.format(start).equals(formatter.format(start.withNano(999_999_999)));
+            } catch (RuntimeException e) {
+                // The formatter can't handle this time at all, it will fail the same way when logging.
+                return false;
+            }
+        }
+
+        // Same format with an empty cache.
+        public TimestampEngine copy(){
+            return new TimestampEngine(head, tail, fractionDigits, cacheable);
+        }
+
+        public boolean needsNanos(){
+            return fractionDigits > 3 || !cacheable;
+        }
+
+        public String format(long epochNanos){
+            long epochSecond = Math.floorDiv(epochNanos, 1_000_000_000L);
+            int nanos = (int) Math.floorMod(epochNanos, 1_000_000_000L);
+            if (!cacheable) {
+                return head.format(ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nanos), clock.getZone()));
+            }
+            Second second = getSecond(epochSecond);
+            if (fractionDigits == 0) return second.full;
+
+            StringBuilder builder = new StringBuilder(second.full.length() + 1 + fractionDigits);
+            builder.append(second.head).append('.');
+            int fraction = (fractionDigits == 3) ? nanos / 1_000_000 : nanos / 1_000;
+            for (int divisor = (fractionDigits == 3) ? 100 : 100_000; divisor > 0; divisor /= 10) {
+                builder.append((char) ('0' + (fraction / divisor) % 10));
+            }
+            return builder.append(second.tail).toString();
+        }
+
+        // Same as format, but written straight into the encoder.
+        public void writeTo(LineEncoder encoder, long epochNanos){
+            if (!cacheable) {
+                encoder.append(format(epochNanos));
+                return;
+            }
+            long epochSecond = Math.floorDiv(epochNanos, 1_000_000_000L);
+            int nanos = (int) Math.floorMod(epochNanos, 1_000_000_000L);
+            Second second = getSecond(epochSecond);
+            if (fractionDigits == 0) {
+                encoder.appendBytes(second.fullBytes);
+                return;
+            }
+            encoder.appendBytes(second.headBytes);
+            encoder.appendByte((byte) '.');
+            int fraction = (fractionDigits == 3) ? nanos / 1_000_000 : nanos / 1_000;
+            encoder.appendDigits(fraction, fractionDigits);
+            encoder.appendBytes(second.tailBytes);
+        }
+
+        private Second getSecond(long epochSecond){
+            Second second = cached;
+            if (second.epochSecond == epochSecond) return second;
+            ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), clock.getZone());
+            second = new Second(epochSecond, head.format(time), (tail == null) ? "" : tail.format(time));
+            // Racing threads format the same second, whichever one lands is fine.
+            cached = second;
+            return second;
+        }
+
+        // The formatted parts of one second.
+        private static class Second {
+            private final long epochSecond;
+            private final String head;
+            private final String tail;
+            private final String full;
+            private final byte[] headBytes;
+            private final byte[] tailBytes;
+            private final byte[] fullBytes;
+
+            public Second(long epochSecond, String head, String tail){
+                this.epochSecond = epochSecond;
+                this.head = head;
+                this.tail = tail;
+                this.full = head + tail;
+                this.headBytes = head.getBytes(CONSOLE_CHARSET);
+                this.tailBytes = tail.getBytes(CONSOLE_CHARSET);
+                this.fullBytes = full.getBytes(CONSOLE_CHARSET);
             }
         }
     }
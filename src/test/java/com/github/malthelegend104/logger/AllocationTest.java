@@ -0,0 +1,129 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static com.github.malthelegend104.logger.ConsoleRedirect.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The level and primitive methods write straight into a reused buffer, and shouldn't allocate once warmed up.
+ */
+class AllocationTest {
+    private static final int CALLS = 10_000;
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private final Logger.Category category = Logger.named("allocation");
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.silent();
+
+    @AfterEach
+    void resetLevel() {
+        Logger.setLevel(Logger.LEVEL_LOG);
+    }
+
+    @Test
+    void primitivesDoNotAllocate() {
+        assertEquals(0, allocatedBy(i -> {
+            Logger.log(i);
+            Logger.info((long) i * 31);
+            Logger.warn((short) i);
+            Logger.err((byte) i);
+            Logger.log((char) ('a' + i % 26));
+            Logger.info(i % 2 == 0);
+            Logger.warn(i + 0.25);
+            Logger.err(i + 0.5f);
+        }));
+    }
+
+    @Test
+    void levelMethodsWithTextDoNotAllocate() {
+        assertEquals(0, allocatedBy(i -> {
+            Logger.log("message");
+            Logger.info("message");
+            Logger.warn("message");
+            Logger.err("message");
+        }));
+    }
+
+    @Test
+    void categoryPrimitivesDoNotAllocate() {
+        assertEquals(0, allocatedBy(i -> {
+            category.log(i);
+            category.info((long) i);
+            category.warn(i % 3 == 0);
+            category.err(i + 0.5f);
+            category.log(i + 0.25);
+        }));
+    }
+
+    @Test
+    void disabledLevelsDoNotAllocate() {
+        Logger.setLevel(Logger.LEVEL_ERR);
+        assertEquals(0, allocatedBy(i -> {
+            Logger.log(i);
+            Logger.info("message");
+            Logger.warn(i + 0.5);
+        }));
+    }
+
+    @Test
+    void decimalsPrintLikeToString() {
+        // Recorded here only, since recording allocates.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true));
+        Random random = new Random(42);
+        double[] doubles = new double[20_000];
+        float[] floats = new float[doubles.length];
+        for (int i = 0; i < doubles.length; i++) {
+            // Half short decimals like the ones usually logged, half any double.
+            double value = (i % 2 == 0)
+                    ? random.nextInt(100_000_000) / Math.pow(10, random.nextInt(12))
+                    : Double.longBitsToDouble(random.nextLong());
+            doubles[i] = (i % 3 == 0) ? -value : value;
+            floats[i] = (i % 2 == 0) ? (float) doubles[i] : Float.intBitsToFloat(random.nextInt());
+        }
+        double[] edges = {0.0, -0.0, 0.001, 0.00099999, 9_999_999.0, 10_000_000.0, 0.1 + 0.2, 1.0 / 3, 100.0, Double.NaN, Double.MIN_VALUE};
+        for (double value : doubles) Logger.log(value);
+        for (float value : floats) Logger.log(value);
+        for (double value : edges) Logger.log(value);
+        String[] lines = out.toString().split(System.lineSeparator());
+        int line = 0;
+        for (double value : doubles) assertEquals(Double.toString(value), message(lines[line++]));
+        for (float value : floats) assertEquals(Float.toString(value), message(lines[line++]));
+        for (double value : edges) assertEquals(Double.toString(value), message(lines[line++]));
+    }
+
+    // Fewest bytes allocated by the current thread over CALLS runs, after as many to warm up. A round can still
+    // allocate while the JIT swaps in compiled code, so a few rounds are measured and the quietest one counts.
+    private long allocatedBy(java.util.function.IntConsumer calls) {
+        for (int i = 0; i < CALLS; i++) calls.accept(i);
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < 5 && fewest > 0; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < CALLS; i++) calls.accept(i);
+            fewest = Math.min(fewest, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        return fewest;
+    }
+}
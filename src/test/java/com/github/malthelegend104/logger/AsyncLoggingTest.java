@@ -0,0 +1,77 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class AsyncLoggingTest {
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.recording();
+
+    @AfterEach
+    void stopAsync() {
+        Logger.disableAsync();
+    }
+
+    @Test
+    void loggingFromInsideAQueuedMessageDoesNotDeadlock() {
+        // toString() runs on the writer thread, and logs while the tiny queue is full.
+        Object logsWhenWritten = new Object() {
+            @Override
+            public String toString() {
+                Logger.log("nested");
+                return "outer";
+            }
+        };
+        Logger.enableAsync(2, Logger.ASYNC_BLOCK);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 50; i++) Logger.log(logsWhenWritten);
+            Logger.disableAsync();
+        });
+        String written = console.out();
+        assertEquals(50, count(written, "\touter"));
+        assertEquals(50, count(written, "\tnested"));
+    }
+
+    @Test
+    void nestedLinesDoNotCorruptTheOuterLine() {
+        Object logsWhenWritten = new Object() {
+            @Override
+            public String toString() {
+                Logger.log("nested");
+                return "outer";
+            }
+        };
+        Logger.log(logsWhenWritten);
+        String[] lines = console.outLines();
+        assertEquals(2, lines.length);
+        assertEquals(1, count(lines[0], "\tnested"));
+        assertEquals(1, count(lines[1], "\touter"));
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int at = text.indexOf(part); at >= 0; at = text.indexOf(part, at + 1)) count++;
+        return count;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CaptureBufferTest {
+    @TempDir
+    Path directory;
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.silent();
+    private Logger logger;
+
+    @BeforeEach
+    void capture() {
+        logger = new Logger(directory + "/");
+    }
+
+    @AfterEach
+    void stopCapture() {
+        logger.stopCapture();
+    }
+
+    @Test
+    void limitedCaptureStartsWithAWholeLine() throws IOException {
+        logger.setCaptureLimit(40);
+        for (int i = 0; i < 100; i++) System.out.println("line number " + i);
+        List<String> lines = standardOut(dump());
+        assertTrue(lines.size() >= 2);
+        for (String line : lines) assertTrue(line.matches("line number \\d+"), line);
+        assertEquals("line number 99", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    void nothingIsLostWhileTheBufferIsSwapped() throws Exception {
+        int threads = 4;
+        int linesEach = 20_000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < linesEach; i++) System.out.println("writer " + id + " line " + i);
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        boolean limited = false;
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            if (limited) logger.removeCaptureLimit();
+            else logger.setCaptureLimit(8 * 1024 * 1024);
+            limited = !limited;
+        }
+        for (Thread writer : writers) writer.join();
+        assertEquals(threads * linesEach, standardOut(dump()).size());
+    }
+
+    @Test
+    void spilledSegmentsAreDeletedOnceReplaced() throws IOException {
+        Path spill = Files.createDirectory(directory.resolve("spill"));
+        logger.setCaptureSpill(spill.toString(), 0, 4096);
+        for (int i = 0; i < 1000; i++) System.out.println("spilled line " + i);
+        // Captures copy in what was printed on their own threads.
+        Logger.flushConsole();
+        assertTrue(segments(spill) > 1);
+        logger.removeCaptureLimit();
+        assertEquals(0, segments(spill));
+        List<String> lines = standardOut(dump());
+        assertEquals(1000, lines.size());
+        assertEquals("spilled line 999", lines.get(999));
+    }
+
+    @Test
+    void captureMovesToTheHeapWhenSegmentsCantBeMade() throws IOException {
+        Path spill = Files.createDirectory(directory.resolve("spill"));
+        logger.setCaptureSpill(spill.toString(), 0, 4096);
+        System.out.println("before");
+        Logger.flushConsole();
+        try (var files = Files.list(spill)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(spill);
+        for (int i = 0; i < 1000; i++) System.out.println("after " + i);
+        List<String> lines = standardOut(dump());
+        assertEquals(1001, lines.size());
+        assertEquals("before", lines.get(0));
+        assertEquals("after 999", lines.get(1000));
+    }
+
+    private static long segments(Path spill) throws IOException {
+        try (var files = Files.list(spill)) {
+            return files.filter(file -> file.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private Path dump() throws IOException {
+        logger.logConsole();
+        try (var files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile).findFirst().orElseThrow();
+        }
+    }
+
+    // Lines between the standard out and error out headers.
+    private static List<String> standardOut(Path dump) throws IOException {
+        List<String> lines = new ArrayList<>();
+        boolean inOut = false;
+        for (String line : Files.readAllLines(dump)) {
+            if (line.equals("------Standard Out------")) {
+                inOut = true;
+            } else if (line.equals("------Error Out------")) {
+                break;
+            } else if (inOut && !line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
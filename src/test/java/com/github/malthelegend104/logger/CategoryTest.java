@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static com.github.malthelegend104.logger.ConsoleRedirect.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CategoryTest {
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.recording();
+
+    @Test
+    void primitivesPrintTheSameAsTheStaticMethods() {
+        Logger.Category category = Logger.named("primitives");
+        Logger.log(1.1f);
+        category.log(1.1f);
+        Logger.log(true);
+        category.log(true);
+        Logger.log((byte) -7);
+        category.log((byte) -7);
+        Logger.log((short) 300);
+        category.log((short) 300);
+        Logger.log(42);
+        category.log(42);
+        String[] lines = console.outLines();
+        assertEquals(10, lines.length);
+        for (int i = 0; i < lines.length; i += 2) {
+            assertEquals(message(lines[i]), message(lines[i + 1]));
+        }
+        assertEquals("1.1", message(lines[0]));
+        assertEquals("true", message(lines[2]));
+    }
+}
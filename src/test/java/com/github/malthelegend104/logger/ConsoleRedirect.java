@@ -0,0 +1,85 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Puts other streams in place of {@link System#out} and {@link System#err} for each test, and the real ones back after.
+ * Register it with {@code @RegisterExtension}; it is put back after the test's own {@code @AfterEach} methods have run.
+ * Either both streams are recorded, to check what was logged, or both are thrown away.
+ */
+final class ConsoleRedirect implements BeforeEachCallback, AfterEachCallback {
+    private final boolean record;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+
+    private ConsoleRedirect(boolean record) {
+        this.record = record;
+    }
+
+    static ConsoleRedirect recording() {
+        return new ConsoleRedirect(true);
+    }
+
+    // For tests that log a lot, or count allocations.
+    static ConsoleRedirect silent() {
+        return new ConsoleRedirect(false);
+    }
+
+    @Override
+    public void beforeEach(ExtensionContext context) {
+        originalOut = System.out;
+        originalErr = System.err;
+        out.reset();
+        err.reset();
+        System.setOut(new PrintStream(record ? out : OutputStream.nullOutputStream(), true));
+        System.setErr(new PrintStream(record ? err : OutputStream.nullOutputStream(), true));
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+    }
+
+    String out() {
+        return out.toString();
+    }
+
+    String err() {
+        return err.toString();
+    }
+
+    String[] outLines() {
+        return out().split(System.lineSeparator());
+    }
+
+    // The text of a logged line, after the time and category, without the colors.
+    static String message(String line) {
+        String text = line.substring(line.lastIndexOf('\t') + 1);
+        int colors = text.indexOf('\u001B');
+        return (colors < 0) ? text : text.substring(0, colors);
+    }
+}
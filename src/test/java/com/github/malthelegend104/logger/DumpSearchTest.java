@@ -0,0 +1,92 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DumpSearchTest {
+    private static final int LINES = 200_000;
+
+    @TempDir
+    Path directory;
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.silent();
+
+    @Test
+    void indexedSearchPassesOnEveryMatchInOrder() throws IOException {
+        Logger logger = new Logger(directory + "/");
+        logger.enableIndexedDumps(1024);
+        logLines();
+        logger.logConsole();
+        logger.stopCapture();
+
+        List<String> found = new ArrayList<>();
+        for (Path segment : Logger.DumpReader.segments(directory)) {
+            try (Logger.DumpReader reader = Logger.DumpReader.open(segment)) {
+                reader.search(Long.MIN_VALUE, Long.MAX_VALUE, Logger.LEVEL_WARN, Pattern.compile("warn \\d*7$"),
+                        line -> found.add(line.getText()));
+            }
+        }
+        assertMatches(found);
+    }
+
+    @Test
+    void plainSearchPrintsEveryMatchInOrder() throws IOException {
+        Logger logger = new Logger(directory + "/");
+        logLines();
+        logger.logConsole();
+        logger.stopCapture();
+        Path dump;
+        try (var files = Files.list(directory)) {
+            dump = files.findFirst().orElseThrow();
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true));
+        LogQuery.main(new String[]{"--regex", "warn \\d*7$", dump.toString()});
+        List<String> found = new ArrayList<>();
+        for (String line : out.toString().split(System.lineSeparator())) found.add(line);
+        assertMatches(found);
+    }
+
+    private static void logLines() {
+        for (int i = 0; i < LINES; i++) {
+            if (i % 10 == 0) Logger.warn("warn {}", i + 7);
+            else Logger.log("line {}", i);
+        }
+    }
+
+    private static void assertMatches(List<String> found) {
+        assertEquals(LINES / 10, found.size());
+        for (int i = 0; i < found.size(); i++) {
+            String line = found.get(i);
+            assertEquals("warn " + (i * 10 + 7), line.substring(line.indexOf('\t') + 1));
+        }
+    }
+}
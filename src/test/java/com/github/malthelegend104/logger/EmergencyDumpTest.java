@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmergencyDumpTest {
+    @TempDir
+    Path directory;
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.recording();
+    private Logger logger;
+
+    @BeforeEach
+    void capture() {
+        logger = new Logger(directory + "/");
+    }
+
+    @AfterEach
+    void stopCapture() {
+        logger.disableEmergencyDump();
+        logger.stopCapture();
+    }
+
+    @Test
+    void uncaughtExceptionIsPrintedLikeTheJvmWould() throws Exception {
+        logger.enableEmergencyDump();
+        RuntimeException[] thrown = new RuntimeException[1];
+        Thread thread = new Thread(() -> {
+            thrown[0] = new IllegalStateException("outer", cause());
+            throw thrown[0];
+        }, "dying thread");
+        thread.start();
+        thread.join();
+
+        StringWriter expected = new StringWriter();
+        expected.write("Exception in thread \"dying thread\" ");
+        thrown[0].printStackTrace(new PrintWriter(expected));
+        String trace = console.err();
+        assertEquals(expected.toString(), trace);
+        assertTrue(trace.contains("Caused by: java.io.IOException: inner"));
+        assertTrue(trace.contains(" more"));
+
+        String dump = Files.readString(emergencyFile());
+        assertTrue(dump.contains("Exception in thread \"dying thread\" java.lang.IllegalStateException: outer"));
+        assertTrue(dump.contains("Caused by: java.io.IOException: inner"));
+    }
+
+    @Test
+    void dumpConsoleLeavesThePreparedFileForTheCrash() throws IOException {
+        logger.enableEmergencyDump();
+        System.out.println("captured");
+        Logger.setAlertSink((message, file) -> { });
+        try {
+            logger.dumpConsole();
+        } finally {
+            Logger.setAlertSink(Logger.AlertSink.pane());
+        }
+        assertEquals(0, Files.size(emergencyFile()));
+        assertTrue(logger.emergencyDump());
+        assertTrue(Files.readString(emergencyFile()).contains("captured"));
+    }
+
+    private Path emergencyFile() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("emergency")).findFirst().orElseThrow();
+        }
+    }
+
+    private static IOException cause() {
+        return new IOException("inner");
+    }
+}
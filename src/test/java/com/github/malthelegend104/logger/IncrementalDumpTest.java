@@ -0,0 +1,99 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IncrementalDumpTest {
+    @TempDir
+    Path directory;
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.silent();
+    private Logger logger;
+
+    @BeforeEach
+    void capture() {
+        logger = new Logger(directory + "/");
+        logger.enableIncrementalDumps();
+    }
+
+    @AfterEach
+    void stopCapture() {
+        logger.stopCapture();
+    }
+
+    @Test
+    void headerIsOnlyWrittenWhenTheFileIsCreated() throws IOException {
+        for (int checkpoint = 0; checkpoint < 3; checkpoint++) {
+            System.out.println("checkpoint " + checkpoint);
+            logger.logConsole();
+        }
+        List<String> lines = Files.readAllLines(dump());
+        assertEquals(List.of("------Standard Out------", "checkpoint 0", "checkpoint 1", "checkpoint 2"), lines);
+    }
+
+    @Test
+    void headerIsWrittenAgainWhenTheStreamChanges() throws IOException {
+        System.out.println("out 0");
+        logger.logConsole();
+        System.out.println("out 1");
+        System.err.println("err 0");
+        logger.logConsole();
+        System.err.println("err 1");
+        logger.logConsole();
+        System.out.println("out 2");
+        logger.logConsole();
+        List<String> lines = Files.readAllLines(dump());
+        assertEquals(List.of("------Standard Out------", "out 0", "out 1",
+                "", "------Error Out------", "err 0", "err 1",
+                "", "------Standard Out------", "out 2"), lines);
+    }
+
+    @Test
+    void asyncDumpOnlyHasWhatWasCapturedWhenItWasAskedFor() throws Exception {
+        System.out.println("before");
+        CompletableFuture<Path> written;
+        // Dumps of one logger are written while holding its lock, so this one waits until the next line is printed.
+        synchronized (logger) {
+            written = logger.logConsoleAsync();
+            System.out.println("after");
+            Logger.flushConsole();
+        }
+        Path file = written.get(10, TimeUnit.SECONDS);
+        assertEquals(List.of("------Standard Out------", "before"), Files.readAllLines(file));
+        logger.logConsole();
+        assertEquals(List.of("------Standard Out------", "before", "after"), Files.readAllLines(file));
+    }
+
+    private Path dump() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile).findFirst().orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LazyMessagesTest {
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.recording();
+
+    @AfterEach
+    void resetLevel() {
+        Logger.setLevel(Logger.LEVEL_LOG);
+    }
+
+    @Test
+    void nullStillResolvesToASingleMethod() {
+        // Stops compiling if a new overload makes this ambiguous again.
+        Logger.log(null);
+        assertTrue(console.out().contains("\tnull"));
+    }
+
+    @Test
+    void supplierIsOnlyCalledWhenTheLineIsWritten() {
+        int[] calls = {0};
+        Logger.setLevel(Logger.LEVEL_WARN);
+        Logger.logLazy(() -> {
+            calls[0]++;
+            return "skipped";
+        });
+        assertEquals(0, calls[0]);
+        Logger.warnLazy(() -> {
+            calls[0]++;
+            return "written";
+        });
+        assertEquals(1, calls[0]);
+        assertTrue(console.out().contains("\twritten"));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitTest {
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.recording();
+
+    @AfterEach
+    void disableRateLimit() {
+        Logger.disableRateLimit();
+    }
+
+    @Test
+    void repeatedMessagesAreCollapsed() {
+        Logger.enableRateLimit(1, 1);
+        for (int i = 0; i < 10; i++) Logger.log("Connection to {} failed", i);
+        assertEquals(9, Logger.getSuppressedMessageCount());
+        Logger.disableRateLimit();
+        assertTrue(console.out().contains("Last message repeated 9 times: Connection to {} failed"));
+    }
+
+    @Test
+    void messagesBuiltWithPlusShareTheLineTheyAreLoggedFrom() {
+        Logger.enableRateLimit(1, 1);
+        for (int i = 0; i < 10; i++) Logger.log("attempt " + i);
+        assertEquals(9, Logger.getSuppressedMessageCount());
+        Logger.disableRateLimit();
+        assertTrue(console.out().contains("Last message repeated 9 times: attempt 0 at " + getClass().getName()));
+    }
+
+    @Test
+    void numbersAreLimitedByTheLineTheyAreLoggedFrom() {
+        Logger.enableRateLimit(1, 1);
+        for (int i = 0; i < 5; i++) {
+            Logger.log(i);
+            Logger.log((long) i);
+            Logger.log(i * 0.5);
+        }
+        // One of each line is let through.
+        assertEquals(12, Logger.getSuppressedMessageCount());
+    }
+
+    @Test
+    void manyKindsOfMessagesShareOneLimitPastTheCap() throws InterruptedException {
+        // Every bucket is full again 10 ms after its message, and can be let go of.
+        Logger.enableRateLimit(100, 1);
+        for (int i = 0; i < 10_000; i++) Logger.log("unique {} " + i, i);
+        // 4096 formats get a bucket of their own, the rest share one.
+        assertTrue(Logger.getSuppressedMessageCount() > 5000);
+        Thread.sleep(1500);
+        long before = Logger.getSuppressedMessageCount();
+        for (int i = 0; i < 10; i++) Logger.log("repeated {}", i);
+        assertEquals(before + 9, Logger.getSuppressedMessageCount());
+    }
+
+    @Test
+    void everyDroppedMessageIsReportedWhileBucketsAreLetGoOf() throws InterruptedException {
+        Logger.enableRateLimit(200, 1);
+        Thread[] threads = new Thread[4];
+        long end = System.nanoTime() + 2_500_000_000L;
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; System.nanoTime() < end; i++) {
+                    Logger.log("format {} " + (i % 8), i);
+                    // Quiet now and then, so buckets fill up again and are let go of.
+                    if (i % 1000 == 0) LockSupport.parkNanos(20_000_000L);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        long dropped = Logger.getSuppressedMessageCount();
+        Logger.disableRateLimit();
+        long reported = 0;
+        Matcher matcher = Pattern.compile("Last message repeated (\\d+) times").matcher(console.out());
+        while (matcher.find()) reported += Long.parseLong(matcher.group(1));
+        assertEquals(dropped, reported);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2022 MalTheLegend104
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.malthelegend104.logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.github.malthelegend104.logger.ConsoleRedirect.message;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RollingFileTest {
+    @TempDir
+    Path directory;
+    @RegisterExtension
+    final ConsoleRedirect console = ConsoleRedirect.silent();
+
+    @AfterEach
+    void stopRollingFile() {
+        Logger.stopRollingFile();
+    }
+
+    @Test
+    void blockingKeepsEveryLineInOrder() throws IOException {
+        Logger.startRollingFile(directory.toString(), "app", 0, 0, 0, 256, Logger.ASYNC_BLOCK);
+        for (int i = 0; i < 10_000; i++) Logger.log("line {}", i);
+        Logger.stopRollingFile();
+        List<String> lines = Files.readAllLines(directory.resolve("app-000001.log"));
+        assertEquals(10_000, lines.size());
+        for (int i = 0; i < lines.size(); i++) assertEquals("line " + i, message(lines.get(i)));
+    }
+
+    @Test
+    void droppedLinesAreCounted() throws IOException {
+        Logger.startRollingFile(directory.toString(), "app", 0, 0, 0, 256, Logger.ASYNC_DROP_AND_COUNT);
+        for (int i = 0; i < 10_000; i++) Logger.log("line {}", i);
+        Logger.stopRollingFile();
+        Pattern dropped = Pattern.compile("Rolling file couldn't keep up, (\\d+) lines were dropped.");
+        int written = 0;
+        int counted = 0;
+        for (String line : Files.readAllLines(directory.resolve("app-000001.log"))) {
+            Matcher matcher = dropped.matcher(line);
+            if (matcher.matches()) counted += Integer.parseInt(matcher.group(1));
+            else written++;
+        }
+        assertEquals(10_000, written + counted);
+    }
+}